@@ -4,4 +4,184 @@ const { WebRTCModule } = NativeModules;
 
 const EventEmitter = new NativeEventEmitter(WebRTCModule);
 
+// When event batching is enabled the native side emits a single event per
+// batch. Unpack it so that listeners receive the events one by one, in order.
+EventEmitter.addListener('webRTCEventBatch', events => {
+  for (const { name, data } of events) {
+    EventEmitter.emit(name, data);
+  }
+});
+
+// Let the native side know which notification events the application
+// observes so that it does not build and send the ones nobody listens to.
+// Events which carry messages or state JS keeps are always sent. The
+// diagnostic events are observed through this emitter, the events of
+// RTCPeerConnection, RTCDataChannel and MediaStreamTrack per object (see
+// observeEvents).
+const EVENT_OBSERVATION_SUPPORTED = typeof WebRTCModule.setEventObserved === 'function';
+const GLOBAL_OBSERVED_EVENTS = [ 'executorWatchdogReport' ];
+
+if (EVENT_OBSERVATION_SUPPORTED) {
+  WebRTCModule.setEventListenersTracked(true);
+
+  const listenerCounts = new Map();
+  const addListener = EventEmitter.addListener.bind(EventEmitter);
+
+  EventEmitter.addListener = (eventName, ...args) => {
+    const subscription = addListener(eventName, ...args);
+
+    if (!GLOBAL_OBSERVED_EVENTS.includes(eventName)) {
+      return subscription;
+    }
+
+    const count = listenerCounts.get(eventName) || 0;
+
+    listenerCounts.set(eventName, count + 1);
+    if (count === 0) {
+      WebRTCModule.setEventObserved(eventName, null, true);
+    }
+
+    const remove = subscription.remove.bind(subscription);
+    let removed = false;
+
+    subscription.remove = () => {
+      if (removed) {
+        return;
+      }
+      removed = true;
+      remove();
+
+      const count = listenerCounts.get(eventName) - 1;
+
+      listenerCounts.set(eventName, count);
+      if (count === 0) {
+        WebRTCModule.setEventObserved(eventName, null, false);
+      }
+    };
+
+    return subscription;
+  };
+}
+
+/**
+ * Tells the native side whether the application observes the given event of
+ * the object with the given key.
+ */
+export function setEventObserved(eventName: string, key: string, observed: boolean) {
+  if (EVENT_OBSERVATION_SUPPORTED) {
+    WebRTCModule.setEventObserved(eventName, key, observed);
+  }
+}
+
+/**
+ * Makes the instances of the given EventTarget class report to the native
+ * side whether the application observes the given native events: an event
+ * is observed while the instance has an on<type> handler or a listener added
+ * with addEventListener for any of the DOM event types it is dispatched as.
+ *
+ * @param targetClass - the EventTarget class
+ * @param events - the DOM event types mapped by native event name
+ * @param getKey - gets the key which identifies an instance to the native side
+ */
+export function observeEvents(
+    targetClass: Class<any>,
+    events: { [eventName: string]: Array<string> },
+    getKey: Object => string) {
+  if (!EVENT_OBSERVATION_SUPPORTED) {
+    return;
+  }
+
+  const prototype = targetClass.prototype;
+  const eventNamesByType = new Map();
+
+  for (const eventName of Object.keys(events)) {
+    for (const type of events[eventName]) {
+      eventNamesByType.set(type, [ ...(eventNamesByType.get(type) || []), eventName ]);
+    }
+  }
+
+  const getListeners = (target, type) => {
+    if (!target._observedListeners) {
+      target._observedListeners = new Map();
+    }
+    let listeners = target._observedListeners.get(type);
+    if (!listeners) {
+      listeners = new Set();
+      target._observedListeners.set(type, listeners);
+    }
+    return listeners;
+  };
+  const hasListeners = (target, type) =>
+    getListeners(target, type).size > 0 || Boolean(target[`on${type}`]);
+  const update = (target, type) => {
+    if (!target._observedEvents) {
+      target._observedEvents = new Map();
+    }
+    for (const eventName of eventNamesByType.get(type) || []) {
+      const observed = events[eventName].some(t => hasListeners(target, t));
+
+      if (Boolean(target._observedEvents.get(eventName)) !== observed) {
+        target._observedEvents.set(eventName, observed);
+        WebRTCModule.setEventObserved(eventName, getKey(target), observed);
+      }
+    }
+  };
+
+  const { addEventListener, removeEventListener } = prototype;
+
+  prototype.addEventListener = function(type, listener, ...args) {
+    addEventListener.call(this, type, listener, ...args);
+    if (listener && eventNamesByType.has(type)) {
+      getListeners(this, type).add(listener);
+      update(this, type);
+    }
+  };
+  prototype.removeEventListener = function(type, listener, ...args) {
+    removeEventListener.call(this, type, listener, ...args);
+    if (listener && eventNamesByType.has(type)) {
+      getListeners(this, type).delete(listener);
+      update(this, type);
+    }
+  };
+
+  // The on<type> handlers do not go through addEventListener.
+  for (const type of eventNamesByType.keys()) {
+    const name = `on${type}`;
+    let descriptor;
+
+    for (let p = prototype; p && !descriptor; p = Object.getPrototypeOf(p)) {
+      descriptor = Object.getOwnPropertyDescriptor(p, name);
+    }
+    if (!descriptor || !descriptor.set) {
+      continue;
+    }
+
+    Object.defineProperty(prototype, name, {
+      configurable: true,
+      enumerable: descriptor.enumerable,
+      get: descriptor.get,
+      set(value) {
+        descriptor.set.call(this, value);
+        update(this, type);
+      }
+    });
+  }
+}
+
+/**
+ * Reports the native events which the given instance of a class passed to
+ * observeEvents observes as no longer observed, e.g. once it is closed.
+ */
+export function unobserveEvents(target: Object, key: string) {
+  if (!target._observedEvents) {
+    return;
+  }
+  for (const [ eventName, observed ] of target._observedEvents) {
+    if (observed) {
+      WebRTCModule.setEventObserved(eventName, key, false);
+    }
+  }
+  target._observedEvents.clear();
+}
+
 export default EventEmitter;
@@ -5,6 +5,7 @@ import EventTarget from 'event-target-shim';
 import MediaStreamErrorEvent from './MediaStreamErrorEvent';
 import type MediaStreamError from './MediaStreamError';
 import { deepClone } from './RTCUtil';
+import { observeEvents } from './EventEmitter';
 
 const {WebRTCModule} = NativeModules;
 
@@ -111,4 +112,11 @@ class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
   }
 }
 
+// Remote video tracks are checked for frames periodically and the result is
+// only sent while the application listens for it.
+observeEvents(
+  MediaStreamTrack,
+  { mediaStreamTrackMuteChanged: [ 'mute', 'unmute' ] },
+  track => track.id);
+
 export default MediaStreamTrack;
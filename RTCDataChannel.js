@@ -5,7 +5,8 @@ import base64 from 'base64-js';
 import EventTarget from 'event-target-shim';
 import MessageEvent from './MessageEvent';
 import RTCDataChannelEvent from './RTCDataChannelEvent';
-import EventEmitter from './EventEmitter';
+import RTCEvent from './RTCEvent';
+import EventEmitter, { setEventObserved } from './EventEmitter';
 
 const {WebRTCModule} = NativeModules;
 
@@ -34,6 +35,20 @@ const DATA_CHANNEL_EVENTS = [
   'error',
 ];
 
+/**
+ * The maximum number of bytes pulled from the native side at once while
+ * received messages are buffered (see RTCDataChannel#setBufferedReceive).
+ */
+const RECEIVE_CHUNK_SIZE = 256 * 1024;
+
+/**
+ * Whether the native side reports the amount it has buffered and the
+ * messages it has processed. Only then are the messages in flight counted in
+ * bufferedAmount; otherwise nothing would ever subtract them again.
+ */
+const NATIVE_BUFFERED_AMOUNT
+  = typeof WebRTCModule.dataChannelSetBufferedAmountLowThreshold === 'function';
+
 class ResourceInUse extends Error {}
 
 export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
@@ -41,8 +56,7 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
   _peerConnectionId: number;
 
   binaryType: 'arraybuffer' = 'arraybuffer'; // we only support 'arraybuffer'
-  bufferedAmount: number = 0;
-  bufferedAmountLowThreshold: number = 0;
+  _bufferedAmountLowThreshold: number = 0;
   id: number;
   label: string;
   maxPacketLifeTime: ?number = null;
@@ -58,6 +72,18 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
   onerror: ?Function;
   onclose: ?Function;
 
+  // The amount buffered on the native side as last reported, and the total
+  // sizes of the messages sent from here and of the ones the native side had
+  // processed (sent or rejected) by then. The difference is in flight.
+  _nativeBufferedAmount: number = 0;
+  _sentAmount: number = 0;
+  _processedAmount: number = 0;
+
+  _bufferedReceive: boolean = false;
+  _fileTransferProgress: { [direction: string]: ?Function } = {};
+  _receiving: boolean = false;
+  _receivePending: boolean = false;
+
   constructor(
       peerConnectionId: number,
       label: string,
@@ -85,10 +111,56 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
     this._registerEvents();
   }
 
+  get bufferedAmount(): number {
+    return this._nativeBufferedAmount + this._sentAmount - this._processedAmount;
+  }
+
+  get bufferedAmountLowThreshold(): number {
+    return this._bufferedAmountLowThreshold;
+  }
+
+  set bufferedAmountLowThreshold(threshold: number) {
+    threshold = Math.max(0, Number(threshold) || 0);
+    if (threshold === this._bufferedAmountLowThreshold) {
+      return;
+    }
+    this._bufferedAmountLowThreshold = threshold;
+    if (typeof WebRTCModule.dataChannelSetBufferedAmountLowThreshold === 'function') {
+      WebRTCModule.dataChannelSetBufferedAmountLowThreshold(this._peerConnectionId, this.id, threshold);
+    }
+  }
+
   send(data: string | ArrayBuffer | ArrayBufferView) {
+    const message = this._toNativeMessage(data);
+    WebRTCModule.dataChannelSend(this._peerConnectionId, this.id, message.data, message.type);
+  }
+
+  /**
+   * Non-standard. Sends many messages with a single call to the native side.
+   * Resolves with an array with an element per message which is null if the
+   * message was sent or the reason why it was not. Messages which were not
+   * sent do not count towards bufferedAmount by then.
+   */
+  sendMany(messages: Array<string | ArrayBuffer | ArrayBufferView>): Promise<Array<?string>> {
+    const nativeMessages = messages.map(data => this._toNativeMessage(data));
+
+    if (typeof WebRTCModule.dataChannelSendMany !== 'function') {
+      nativeMessages.forEach(message =>
+        WebRTCModule.dataChannelSend(this._peerConnectionId, this.id, message.data, message.type));
+      return Promise.resolve(nativeMessages.map(() => null));
+    }
+    return new Promise(resolve => {
+      WebRTCModule.dataChannelSendMany(this._peerConnectionId, this.id, nativeMessages, resolve);
+    });
+  }
+
+  _toNativeMessage(data: string | ArrayBuffer | ArrayBufferView): { data: string, type: string } {
     if (typeof data === 'string') {
-      WebRTCModule.dataChannelSend(this._peerConnectionId, this.id, data, 'text');
-      return;
+      if (NATIVE_BUFFERED_AMOUNT) {
+        // In flight until the native side reports it as processed.
+        this._sentAmount += utf8Length(data);
+      }
+      return { data, type: 'text' };
     }
 
     // Safely convert the buffer object to an Uint8Array for base64-encoding
@@ -99,7 +171,209 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
     } else {
       throw new TypeError('Data must be either string, ArrayBuffer, or ArrayBufferView');
     }
-    WebRTCModule.dataChannelSend(this._peerConnectionId, this.id, base64.fromByteArray(data), 'binary');
+    if (NATIVE_BUFFERED_AMOUNT) {
+      this._sentAmount += data.byteLength;
+    }
+    return { data: base64.fromByteArray(data), type: 'binary' };
+  }
+
+  /**
+   * Non-standard. Streams a local file into this channel as binary messages
+   * without passing its contents through JS. Resolves with the number of
+   * bytes sent. options.onProgress is called with (bytes, totalBytes).
+   */
+  sendFile(path: string, options: ?{ chunkSize?: number, onProgress?: Function }): Promise<number> {
+    const { onProgress, ...nativeOptions } = options || {};
+
+    this._setFileTransferProgress('send', onProgress);
+    return WebRTCModule.dataChannelSendFile(this._peerConnectionId, this.id, path, nativeOptions)
+      .then(result => {
+        this._setFileTransferProgress('send', null);
+        return result.bytes;
+      }, error => {
+        this._setFileTransferProgress('send', null);
+        throw error;
+      });
+  }
+
+  /**
+   * Non-standard. Writes the next size bytes of binary messages received by
+   * this channel into a local file without passing them through JS; they do
+   * not fire 'message' events. The sender is expected to wait for the
+   * receiver to be ready (e.g. an application-level acknowledgement) before
+   * sending. Resolves with the number of bytes received. options.onProgress
+   * is called with (bytes, totalBytes).
+   */
+  receiveFile(path: string, size: number, options: ?{ onProgress?: Function }): Promise<number> {
+    const { onProgress } = options || {};
+
+    this._setFileTransferProgress('receive', onProgress);
+    return WebRTCModule.dataChannelReceiveFile(this._peerConnectionId, this.id, path, size)
+      .then(result => {
+        this._setFileTransferProgress('receive', null);
+        return result.bytes;
+      }, error => {
+        this._setFileTransferProgress('receive', null);
+        throw error;
+      });
+  }
+
+  /**
+   * Sets the progress callback of the file transfer in the given direction.
+   * The native side only reports the progress of transfers with one.
+   */
+  _setFileTransferProgress(direction: string, onProgress: ?Function) {
+    const observed = Boolean(onProgress);
+
+    if (Boolean(this._fileTransferProgress[direction]) !== observed) {
+      setEventObserved(
+        'dataChannelFileTransferProgress',
+        `${this._peerConnectionId}/${this.id}/${direction}`,
+        observed);
+    }
+    this._fileTransferProgress[direction] = onProgress;
+  }
+
+  /**
+   * Non-standard. Aborts the file transfers started with sendFile and
+   * receiveFile.
+   */
+  cancelFileTransfers() {
+    WebRTCModule.dataChannelCancelFileTransfers(this._peerConnectionId, this.id);
+  }
+
+  /**
+   * Non-standard. Makes the native side buffer the received messages and
+   * deliver many of them per bridge call instead of one event per message,
+   * with the binary payloads Base64-encoded together. Recommended for
+   * channels which receive many (binary) messages. 'message' events are
+   * dispatched as usual and in order. If the messages are received faster
+   * than they are dispatched and too many pile up, an 'error' event is
+   * dispatched and the channel is closed.
+   */
+  setBufferedReceive(enabled: boolean) {
+    if (typeof WebRTCModule.dataChannelSetBufferedReceive !== 'function') {
+      return;
+    }
+    enabled = !!enabled;
+    if (this._bufferedReceive === enabled) {
+      return;
+    }
+    this._bufferedReceive = enabled;
+    // When disabled, the native side delivers whatever is still buffered in
+    // dataChannelReceiveMessages events, ahead of the messages it receives
+    // after the switch. Pulling as well could reorder them.
+    WebRTCModule.dataChannelSetBufferedReceive(this._peerConnectionId, this.id, enabled);
+  }
+
+  /**
+   * Non-standard. Makes the native side accumulate the received messages and
+   * deliver them in batches: at the latest after interval milliseconds, or
+   * as soon as maxMessages messages or maxBytes bytes are pending (maxBytes
+   * also caps the size of a batch). 'message' events are dispatched as usual
+   * and in order. Pass null to deliver messages one by one again.
+   */
+  setReceiveCoalescing(options: ?{ interval?: number, maxMessages?: number, maxBytes?: number }) {
+    if (typeof WebRTCModule.dataChannelSetReceiveCoalescing !== 'function') {
+      return;
+    }
+    const {
+      interval = 0,
+      maxMessages = 0,
+      maxBytes = 0
+    } = options || {};
+
+    WebRTCModule.dataChannelSetReceiveCoalescing(
+      this._peerConnectionId, this.id, interval, maxMessages, maxBytes);
+  }
+
+  /**
+   * Non-standard. Schedules the messages sent on this channel against the
+   * ones of the other channels of its connection: channels of a higher
+   * priority are sent first and channels of the same priority share the
+   * bandwidth in proportion to their weights. Use it to keep control
+   * channels responsive while another channel transfers in bulk. Messages
+   * which are held back count as sent; if they cannot be sent later on, an
+   * 'error' event is dispatched.
+   */
+  setSendPriority(priority: number, weight: number = 1) {
+    if (typeof WebRTCModule.dataChannelSetSendPriority !== 'function') {
+      return;
+    }
+    WebRTCModule.dataChannelSetSendPriority(this._peerConnectionId, this.id, priority, weight);
+  }
+
+  /**
+   * Non-standard. Enables or disables the compression of the messages sent
+   * and received on this channel. Deflated messages are sent as binary
+   * messages with a framing only this library understands, so compression
+   * is tied to the channel: channels with a 'deflate' protocol or label (or
+   * one ending in '+deflate') have it enabled already. Use this only for the
+   * ones the remote peer creates with such a protocol but not label, whose
+   * protocol is not known natively.
+   */
+  setCompression(enabled: boolean, threshold: number = 256) {
+    if (typeof WebRTCModule.dataChannelSetCompression !== 'function') {
+      return;
+    }
+    WebRTCModule.dataChannelSetCompression(
+      this._peerConnectionId, this.id, !!enabled, threshold);
+  }
+
+  /**
+   * Non-standard. Resolves with the byte counts and ratios of the
+   * compression of this channel or null if it is not compressed.
+   */
+  getCompressionStats(): Promise<?Object> {
+    if (typeof WebRTCModule.dataChannelGetCompressionStats !== 'function') {
+      return Promise.resolve(null);
+    }
+    return WebRTCModule.dataChannelGetCompressionStats(this._peerConnectionId, this.id);
+  }
+
+  async _receive() {
+    if (this._receiving) {
+      return;
+    }
+    this._receiving = true;
+    try {
+      while (this._receivePending && this._bufferedReceive) {
+        this._receivePending = false;
+
+        let chunk;
+        do {
+          chunk = await WebRTCModule.dataChannelReceive(
+            this._peerConnectionId, this.id, RECEIVE_CHUNK_SIZE);
+          if (!chunk) {
+            return;
+          }
+
+          this._dispatchMessages(chunk);
+        } while (chunk.remaining > 0 && this._bufferedReceive);
+      }
+    } finally {
+      this._receiving = false;
+    }
+  }
+
+  /**
+   * Dispatches a 'message' event for each message in a batch of messages
+   * delivered by the native side. The payloads of the binary messages are
+   * concatenated in a single Base64 string and the messages carry their
+   * lengths instead.
+   */
+  _dispatchMessages(chunk: { data: string, messages: Array<string | number> }) {
+    const bytes = base64.toByteArray(chunk.data);
+    let offset = bytes.byteOffset;
+
+    for (const message of chunk.messages) {
+      let data = message;
+      if (typeof message === 'number') {
+        data = bytes.buffer.slice(offset, offset + message);
+        offset += message;
+      }
+      this.dispatchEvent(new MessageEvent('message', {data}));
+    }
   }
 
   close() {
@@ -141,7 +415,80 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
         }
         this.dispatchEvent(new MessageEvent('message', {data}));
       }),
+      EventEmitter.addListener('dataChannelBufferedAmountChanged', ev => {
+        if (ev.peerConnectionId !== this._peerConnectionId
+            || ev.id !== this.id) {
+          return;
+        }
+        const previousAmount = this.bufferedAmount;
+        this._nativeBufferedAmount = ev.bufferedAmount;
+        // Messages which failed to send are processed but not buffered. The
+        // events are emitted on more than one native thread so an older
+        // total may arrive after a newer one.
+        this._processedAmount
+          = typeof ev.processedAmount === 'number'
+            ? Math.max(this._processedAmount, ev.processedAmount)
+            : this._sentAmount;
+        // The native side only knows whether its part crossed the threshold.
+        const threshold = this._bufferedAmountLowThreshold;
+        if (previousAmount > threshold && this.bufferedAmount <= threshold) {
+          this.dispatchEvent(new RTCDataChannelEvent('bufferedamountlow', {channel: this}));
+        }
+      }),
+      EventEmitter.addListener('dataChannelFileTransferProgress', ev => {
+        if (ev.peerConnectionId !== this._peerConnectionId
+            || ev.id !== this.id) {
+          return;
+        }
+        const onProgress = this._fileTransferProgress[ev.direction];
+        onProgress && onProgress(ev.bytes, ev.totalBytes);
+      }),
+      EventEmitter.addListener('dataChannelReceiveMessages', ev => {
+        if (ev.peerConnectionId !== this._peerConnectionId
+            || ev.id !== this.id) {
+          return;
+        }
+        this._dispatchMessages(ev);
+      }),
+      EventEmitter.addListener('dataChannelMessagesAvailable', ev => {
+        if (ev.peerConnectionId !== this._peerConnectionId
+            || ev.id !== this.id
+            || !this._bufferedReceive) {
+          return;
+        }
+        this._receivePending = true;
+        this._receive();
+      }),
+      EventEmitter.addListener('dataChannelError', ev => {
+        if (ev.peerConnectionId !== this._peerConnectionId
+            || ev.id !== this.id) {
+          return;
+        }
+        this.dispatchEvent(new RTCEvent('error', {error: new Error(ev.message)}));
+      }),
     ];
   }
 
 }
+
+/**
+ * Computes the number of bytes of the UTF-8 encoding of the given string.
+ */
+function utf8Length(s: string): number {
+  let length = 0;
+  for (let i = 0; i < s.length; i++) {
+    const c = s.charCodeAt(i);
+    if (c < 0x80) {
+      length += 1;
+    } else if (c < 0x800) {
+      length += 2;
+    } else if (c >= 0xd800 && c < 0xdc00 && i + 1 < s.length) {
+      // A surrogate pair encodes a code point outside the BMP.
+      length += 4;
+      i++;
+    } else {
+      length += 3;
+    }
+  }
+  return length;
+}
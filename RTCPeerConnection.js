@@ -14,7 +14,7 @@ import RTCIceCandidate from './RTCIceCandidate';
 import RTCIceCandidateEvent from './RTCIceCandidateEvent';
 import RTCEvent from './RTCEvent';
 import * as RTCUtil from './RTCUtil';
-import EventEmitter from './EventEmitter';
+import EventEmitter, { observeEvents, unobserveEvents } from './EventEmitter';
 
 const {WebRTCModule} = NativeModules;
 
@@ -56,6 +56,8 @@ const PEER_CONNECTION_EVENTS = [
   'icegatheringstatechange',
   'negotiationneeded',
   'signalingstatechange',
+  // Non-standard, see startStatsSampling:
+  'statssample',
   // Peer-to-peer Data API:
   'datachannel',
   // old:
@@ -63,6 +65,12 @@ const PEER_CONNECTION_EVENTS = [
   'removestream',
 ];
 
+type RTCStatsFilter = {
+  types?: Array<string>,
+  fields?: Array<string>,
+  ssrcs?: Array<number>
+};
+
 let nextPeerConnectionId = 0;
 
 export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENTS) {
@@ -85,6 +93,12 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
   onaddstream: ?Function;
   onremovestream: ?Function;
 
+  /**
+   * Non-standard. The stats merged from the samples pushed since
+   * startStatsSampling was called.
+   */
+  statsSample: Map<string, Object> = new Map();
+
   _peerConnectionId: number;
   _localStreams: Array<MediaStream> = [];
   _remoteStreams: Array<MediaStream> = [];
@@ -202,8 +216,140 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
     });
   }
 
-  getStats() {
-    return WebRTCModule.peerConnectionGetStats(this._peerConnectionId)
+  /**
+   * Adds multiple remote ICE candidates at once, which is cheaper than
+   * calling addIceCandidate for each of them when they arrive in bursts.
+   *
+   * @param {Array} candidates - the candidates to add
+   * @returns {Promise<Array<true | string>>} true for each candidate which
+   * was added or the reason why it was not
+   */
+  addIceCandidates(candidates: Array<RTCIceCandidate>) {
+    if (typeof WebRTCModule.peerConnectionAddICECandidates !== 'function') {
+      return Promise.all(candidates.map(candidate =>
+        this.addIceCandidate(candidate).then(() => true, e => e.message)));
+    }
+    return new Promise(resolve => {
+      WebRTCModule.peerConnectionAddICECandidates(
+        candidates.map(c => c && c.toJSON ? c.toJSON() : c),
+        this._peerConnectionId,
+        resolve);
+    });
+  }
+
+  /**
+   * Non-standard. Sets the total number of bytes the data channels of this
+   * connection may have buffered before their messages are held back and
+   * scheduled by priority and weight (see RTCDataChannel.setSendPriority).
+   */
+  setDataChannelSendBudget(budget: number) {
+    if (typeof WebRTCModule.peerConnectionSetDataChannelSendBudget !== 'function') {
+      return;
+    }
+    WebRTCModule.peerConnectionSetDataChannelSendBudget(this._peerConnectionId, budget);
+  }
+
+  /**
+   * Non-standard. Makes the native side sample the stats every given interval
+   * and push only what changed, along with derived rates (sendBitrate,
+   * receiveBitrate, packetsLostPerSecond, framesEncodedPerSecond,
+   * framesDecodedPerSecond). The samples are merged into statsSample and a
+   * 'statssample' event is dispatched after each of them.
+   *
+   * @param {number} interval - the sampling interval in milliseconds
+   * @param {Object} filter - the stats to sample, like the filter of getStats;
+   * fields may also name the derived rates
+   * @returns {boolean} whether sampling is supported
+   */
+  startStatsSampling(interval: number, filter?: ?RTCStatsFilter) {
+    if (typeof WebRTCModule.peerConnectionStartStatsSampling !== 'function') {
+      return false;
+    }
+    this.statsSample = new Map();
+    WebRTCModule.peerConnectionStartStatsSampling(
+      this._peerConnectionId, interval, filter || null);
+    return true;
+  }
+
+  stopStatsSampling() {
+    if (typeof WebRTCModule.peerConnectionStopStatsSampling !== 'function') {
+      return;
+    }
+    WebRTCModule.peerConnectionStopStatsSampling(this._peerConnectionId);
+  }
+
+  /**
+   * Non-standard. Makes the native side record the numeric stats every given
+   * interval into a ring buffer of the last capacity samples, without any
+   * bridge traffic, for getStatsHistory. Any history recorded before is
+   * discarded.
+   *
+   * @param {Object} options - interval in milliseconds (1000 by default),
+   * capacity in samples (300 by default, at most 3600) and the types, fields
+   * and ssrcs filter of getStats. At most 1024 metrics are recorded, fewer
+   * with a capacity above 512 samples.
+   * @returns {boolean} whether recording is supported
+   */
+  startStatsHistory(options?: { interval?: number, capacity?: number } & RTCStatsFilter = {}) {
+    if (typeof WebRTCModule.peerConnectionStartStatsHistory !== 'function') {
+      return false;
+    }
+    const { interval = 1000, capacity = 300, ...filter } = options;
+    WebRTCModule.peerConnectionStartStatsHistory(
+      this._peerConnectionId, interval, capacity, filter);
+    return true;
+  }
+
+  /**
+   * Non-standard. Stops recording and discards the history, including the
+   * one kept after close().
+   */
+  stopStatsHistory() {
+    if (typeof WebRTCModule.peerConnectionStopStatsHistory !== 'function') {
+      return;
+    }
+    WebRTCModule.peerConnectionStopStatsHistory(this._peerConnectionId);
+  }
+
+  /**
+   * Non-standard. Resolves with the recorded stats history:
+   * { timestamps: [...], stats: { [id]: { type, [metric]: [...] } } } where
+   * the arrays of values are aligned with timestamps and hold null where a
+   * metric was missing; null if no history is being recorded. The history
+   * recorded until close() may be queried once afterwards, e.g. to dump it at
+   * the end of a call, or discarded with stopStatsHistory().
+   *
+   * @param {Object} query - optional from and to timestamps in milliseconds
+   * and ids, types and metrics arrays
+   */
+  getStatsHistory(query?: ?{
+    from?: number,
+    to?: number,
+    ids?: Array<string>,
+    types?: Array<string>,
+    metrics?: Array<string>
+  }) {
+    if (typeof WebRTCModule.peerConnectionGetStatsHistory !== 'function') {
+      return Promise.resolve(null);
+    }
+    return WebRTCModule.peerConnectionGetStatsHistory(this._peerConnectionId, query || null)
+      .then(data => data === null ? null : JSON.parse(data));
+  }
+
+  /**
+   * Gets the stats of this connection. Non-standard: a filter may select
+   * the stats to include by type (e.g. ['inbound-rtp', 'outbound-rtp']), by
+   * SSRC (RTP stats only) and the members to include by name, natively and
+   * before they are serialized. id, type and timestamp are always included.
+   *
+   * @param {Object} filter - optional types, fields and ssrcs arrays
+   */
+  getStats(filter?: ?RTCStatsFilter) {
+    if (filter instanceof MediaStreamTrack) {
+      // Per-track stats are not supported; report everything.
+      filter = null;
+    }
+    return WebRTCModule.peerConnectionGetStats(this._peerConnectionId, filter || null)
       .then( data =>  {
         /* On both Android and iOS it is faster to construct a single
          JSON string representing the Map of StatsReports and have it
@@ -220,6 +366,29 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
       });
   }
 
+  /**
+   * Non-standard. Gets the stats of many connections at once, all of them
+   * if peerConnections is not specified, into a single report. The stats are
+   * requested natively at the same time so that they are aligned. Their ids
+   * are prefixed with the id of their connection and a / and they carry it
+   * as peerConnectionId.
+   *
+   * @param {Array<RTCPeerConnection>} peerConnections - optional connections
+   * @param {Object} filter - optional types, fields and ssrcs arrays
+   */
+  static getStatsForPeerConnections(
+      peerConnections?: ?Array<RTCPeerConnection>,
+      filter?: ?RTCStatsFilter) {
+    if (typeof WebRTCModule.getStatsForPeerConnections !== 'function') {
+      return Promise.reject(new Error('getStatsForPeerConnections is not supported'));
+    }
+    const ids = peerConnections
+      ? peerConnections.map(pc => pc._peerConnectionId)
+      : null;
+    return WebRTCModule.getStatsForPeerConnections(ids, filter || null)
+      .then(data => new Map(JSON.parse(data)));
+  }
+
   getLocalStreams() {
     return this._localStreams.slice();
   }
@@ -243,6 +412,7 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
   _unregisterEvents(): void {
     this._subscriptions.forEach(e => e.remove());
     this._subscriptions = [];
+    unobserveEvents(this, String(this._peerConnectionId));
   }
 
   _registerEvents(): void {
@@ -275,6 +445,19 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
           this._unregisterEvents();
         }
       }),
+      EventEmitter.addListener('peerConnectionStatsSample', ev => {
+        if (ev.id !== this._peerConnectionId) {
+          return;
+        }
+        for (const [id, delta] of JSON.parse(ev.stats)) {
+          const stats = this.statsSample.get(id);
+          this.statsSample.set(id, stats ? Object.assign(stats, delta) : delta);
+        }
+        for (const id of ev.removed) {
+          this.statsSample.delete(id);
+        }
+        this.dispatchEvent(new RTCEvent('statssample'));
+      }),
       EventEmitter.addListener('peerConnectionSignalingStateChanged', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
@@ -322,6 +505,18 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
         const event = new RTCIceCandidateEvent('icecandidate', {candidate});
         this.dispatchEvent(event);
       }),
+      EventEmitter.addListener('peerConnectionGotICECandidates', ev => {
+        if (ev.id !== this._peerConnectionId) {
+          return;
+        }
+        // Emitted instead of peerConnectionGotICECandidate when the
+        // iceCandidateCoalescingWindow configuration option is set.
+        for (const c of ev.candidates) {
+          const candidate = new RTCIceCandidate(c);
+          const event = new RTCIceCandidateEvent('icecandidate', {candidate});
+          this.dispatchEvent(event);
+        }
+      }),
       EventEmitter.addListener('peerConnectionIceGatheringChanged', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
@@ -406,4 +601,12 @@ WebRTCModule.createDataChannel(
 dataChannelIds.add(id);
 return new RTCDataChannel(this._peerConnectionId, label, dataChannelDict);
 }
-}
\ No newline at end of file
+}
+
+// Gathering state changes are only sent while the application listens for
+// them or for candidates (the end of candidates comes with the change to
+// 'complete'); iceGatheringState catches up once it does.
+observeEvents(
+  RTCPeerConnection,
+  { peerConnectionIceGatheringChanged: [ 'icegatheringstatechange', 'icecandidate' ] },
+  pc => String(pc._peerConnectionId));
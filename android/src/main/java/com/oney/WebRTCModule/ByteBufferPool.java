@@ -0,0 +1,88 @@
+package com.oney.WebRTCModule;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of heap {@link ByteBuffer}s into which received payloads are copied
+ * on the network thread so that they outlive the callback of libwebrtc and
+ * are processed on a worker which releases them afterwards. The pooled
+ * buffers grow with the payloads up to a maximum size; larger payloads get a
+ * buffer of their own which is not kept.
+ */
+final class ByteBufferPool {
+    /**
+     * The pool of the payloads received by <tt>DataChannel</tt>s.
+     */
+    static final ByteBufferPool RECEIVED_PAYLOADS
+        = new ByteBufferPool(32, 64 * 1024);
+
+    private static final int MIN_BUFFER_SIZE = 1024;
+
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    private final int maxBuffers;
+    private final int maxBufferSize;
+
+    /**
+     * @param maxBuffers the maximum number of buffers kept for reuse
+     * @param maxBufferSize the maximum capacity of a buffer kept for reuse
+     */
+    ByteBufferPool(int maxBuffers, int maxBufferSize) {
+        this.maxBuffers = maxBuffers;
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * Copies the remaining bytes of the given buffer into a buffer of this
+     * pool.
+     *
+     * @param data the bytes to copy; consumed
+     * @return a buffer with the copied bytes between its position and its
+     * limit, to be handed back with {@link #release}
+     */
+    ByteBuffer copyOf(ByteBuffer data) {
+        ByteBuffer buffer = acquire(data.remaining());
+        buffer.put(data);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Gets a cleared buffer with a capacity of at least the given length.
+     */
+    ByteBuffer acquire(int length) {
+        if (length > maxBufferSize) {
+            return ByteBuffer.allocate(length);
+        }
+
+        ByteBuffer buffer;
+        synchronized (buffers) {
+            buffer = buffers.poll();
+        }
+
+        if (buffer == null || buffer.capacity() < length) {
+            // Grow the pooled buffers along with the payloads.
+            int capacity = buffer == null ? MIN_BUFFER_SIZE : buffer.capacity();
+            while (capacity < length) {
+                capacity *= 2;
+            }
+            buffer = ByteBuffer.allocate(Math.min(capacity, maxBufferSize));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Hands a buffer obtained from this pool back for reuse.
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() > maxBufferSize) {
+            return;
+        }
+        synchronized (buffers) {
+            if (buffers.size() < maxBuffers) {
+                buffers.push(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.oney.WebRTCModule;
+
+import java.util.List;
+
+import org.webrtc.CameraEnumerationAndroid.CaptureFormat;
+import org.webrtc.CameraEnumerator;
+import org.webrtc.CameraVideoCapturer;
+
+/**
+ * A {@link CameraEnumerator} which answers the queries about the cameras from
+ * a {@link DeviceCapabilityCache} and only asks the wrapped
+ * {@code CameraEnumerator} (and caches its answers) on cache misses.
+ */
+class CachingCameraEnumerator implements CameraEnumerator {
+    private static final String BACK_FACING = "backFacing";
+    private static final String FRONT_FACING = "frontFacing";
+
+    private final DeviceCapabilityCache cache;
+    private final CameraEnumerator delegate;
+
+    CachingCameraEnumerator(CameraEnumerator delegate, DeviceCapabilityCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public String[] getDeviceNames() {
+        String[] deviceNames = cache.getDeviceNames();
+        if (deviceNames == null) {
+            deviceNames = delegate.getDeviceNames();
+            cache.putDeviceNames(deviceNames);
+        }
+        return deviceNames;
+    }
+
+    @Override
+    public boolean isFrontFacing(String deviceName) {
+        Boolean frontFacing = cache.getDeviceProperty(deviceName, FRONT_FACING);
+        if (frontFacing == null) {
+            // May throw in which case nothing is cached.
+            frontFacing = delegate.isFrontFacing(deviceName);
+            cache.putDeviceProperty(deviceName, FRONT_FACING, frontFacing);
+        }
+        return frontFacing;
+    }
+
+    @Override
+    public boolean isBackFacing(String deviceName) {
+        Boolean backFacing = cache.getDeviceProperty(deviceName, BACK_FACING);
+        if (backFacing == null) {
+            backFacing = delegate.isBackFacing(deviceName);
+            cache.putDeviceProperty(deviceName, BACK_FACING, backFacing);
+        }
+        return backFacing;
+    }
+
+    @Override
+    public List<CaptureFormat> getSupportedFormats(String deviceName) {
+        List<CaptureFormat> formats = cache.getSupportedFormats(deviceName);
+        if (formats == null) {
+            formats = delegate.getSupportedFormats(deviceName);
+            cache.putSupportedFormats(deviceName, formats);
+        }
+        return formats;
+    }
+
+    @Override
+    public CameraVideoCapturer createCapturer(
+            String deviceName,
+            CameraVideoCapturer.CameraEventsHandler eventsHandler) {
+        return delegate.createCapturer(deviceName, eventsHandler);
+    }
+}
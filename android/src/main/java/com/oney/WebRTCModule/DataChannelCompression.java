@@ -0,0 +1,317 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.webrtc.DataChannel;
+
+/**
+ * Deflates the messages sent on a <tt>DataChannel</tt> and inflates the ones
+ * received on it. Deflated messages are sent as binary messages (deflated
+ * bytes are not valid UTF-8) which start with a header byte telling whether
+ * the rest is deflated and whether it was a text message. Binary messages
+ * always carry the header so that small or incompressible ones may be sent as
+ * they are; text messages which are not deflated are sent as plain text
+ * messages. Both ends have to agree on the framing which is what the
+ * <tt>deflate</tt> subprotocol or label of the <tt>DataChannel</tt> is for.
+ */
+final class DataChannelCompression {
+    /**
+     * The threshold below which messages are not deflated by default.
+     */
+    static final int DEFAULT_THRESHOLD = 256;
+
+    private static final byte HEADER_RAW = 0;
+    private static final byte HEADER_DEFLATED = 1;
+    private static final byte HEADER_DEFLATED_TEXT = 2;
+
+    /**
+     * The maximum capacity of the output arrays which is kept between
+     * messages.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    /**
+     * The maximum size of an inflated message. Guards against messages which
+     * inflate to absurd sizes.
+     */
+    private static final int MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The size of the messages at or above which they are deflated.
+     */
+    private final int threshold;
+
+    /**
+     * Used by the executor of the <tt>PeerConnection</tt> which sends.
+     * Guards the fields of the sending side.
+     */
+    private final Deflater deflater
+        = new Deflater(Deflater.DEFAULT_COMPRESSION, /* nowrap */ true);
+    private byte[] encoded = new byte[1024];
+    private ByteBuffer encodedBuffer = ByteBuffer.wrap(encoded);
+    private long sentBytes;
+    private long sentWireBytes;
+    private long sentDeflatedMessages;
+
+    /**
+     * Used by the worker which receives. Guards the fields of the receiving
+     * side.
+     */
+    private final Inflater inflater = new Inflater(/* nowrap */ true);
+    private byte[] compressed = new byte[1024];
+    private byte[] inflated = new byte[1024];
+    private ByteBuffer inflatedBuffer = ByteBuffer.wrap(inflated);
+    private long receivedBytes;
+    private long receivedWireBytes;
+    private long receivedDeflatedMessages;
+
+    DataChannelCompression(int threshold) {
+        this.threshold = Math.max(0, threshold);
+    }
+
+    /**
+     * Determines whether the given <tt>DataChannel</tt> subprotocol or label
+     * asks for compression i.e. whether it is <tt>deflate</tt> or ends with
+     * <tt>+deflate</tt> (e.g. <tt>json+deflate</tt>). The label is the only
+     * one of them available for the <tt>DataChannel</tt>s announced by the
+     * remote peer.
+     */
+    static boolean isNegotiated(@Nullable String protocolOrLabel) {
+        return protocolOrLabel != null
+            && (protocolOrLabel.equals("deflate")
+                || protocolOrLabel.endsWith("+deflate"));
+    }
+
+    /**
+     * Frames a message to be sent, deflating it if it is large enough and
+     * deflating makes it smaller. Must run on the executor of the
+     * <tt>PeerConnection</tt>.
+     *
+     * @param binary whether the message is a binary message
+     * @return the message to send in an output buffer which is reused by the
+     * next call; binary unless it is a text message which is not deflated
+     */
+    DataChannel.Buffer encode(
+            byte[] payload,
+            int offset,
+            int length,
+            boolean binary) {
+        synchronized (deflater) {
+            if (encoded.length > MAX_RETAINED_CAPACITY) {
+                encoded = new byte[1024];
+            }
+
+            int size = 0;
+
+            if (length >= threshold) {
+                deflater.reset();
+                deflater.setInput(payload, offset, length);
+                deflater.finish();
+
+                // Give up as soon as deflating does not make it smaller.
+                size = 1;
+                while (!deflater.finished() && size <= length) {
+                    if (size == encoded.length) {
+                        encoded = grow(encoded, size, size * 2);
+                    }
+                    size += deflater.deflate(encoded, size, encoded.length - size);
+                }
+
+                if (deflater.finished() && size <= length) {
+                    encoded[0] = binary ? HEADER_DEFLATED : HEADER_DEFLATED_TEXT;
+                    sentDeflatedMessages++;
+                } else {
+                    size = 0;
+                }
+            }
+            if (size == 0) {
+                if (!binary) {
+                    // Sent as it is, readable by any peer.
+                    sentBytes += length;
+                    sentWireBytes += length;
+                    return new DataChannel.Buffer(
+                        ByteBuffer.wrap(payload, offset, length),
+                        false);
+                }
+                size = length + 1;
+                if (encoded.length < size) {
+                    encoded = new byte[size];
+                }
+                encoded[0] = HEADER_RAW;
+                System.arraycopy(payload, offset, encoded, 1, length);
+            }
+
+            sentBytes += length;
+            sentWireBytes += size;
+            encodedBuffer = wrap(encodedBuffer, encoded, size);
+            return new DataChannel.Buffer(encodedBuffer, true);
+        }
+    }
+
+    /**
+     * Determines whether a received message is a binary message once it is
+     * decoded, without consuming it.
+     *
+     * @param data the received message
+     * @param binary whether it was received as a binary message
+     */
+    static boolean isDecodedBinary(ByteBuffer data, boolean binary) {
+        return binary
+            && (!data.hasRemaining()
+                || data.get(data.position()) != HEADER_DEFLATED_TEXT);
+    }
+
+    /**
+     * Unframes a received message, inflating it if necessary. Must run on
+     * the worker which receives the messages of the <tt>DataChannel</tt>.
+     *
+     * @param data the received message; consumed
+     * @param binary whether it was received as a binary message
+     * @return the payload of the message: <tt>data</tt>, the rest of it or an
+     * output buffer which is reused by the next call
+     * @throws DataFormatException if the message is malformed
+     */
+    ByteBuffer decode(ByteBuffer data, boolean binary)
+            throws DataFormatException {
+        synchronized (inflater) {
+            int length = data.remaining();
+            if (!binary) {
+                // Text messages are never framed.
+                receivedBytes += length;
+                receivedWireBytes += length;
+                return data;
+            }
+            if (length == 0) {
+                throw new DataFormatException("Missing compression header");
+            }
+
+            byte header = data.get();
+            ByteBuffer payload;
+
+            if (header == HEADER_RAW) {
+                payload = data;
+            } else if (header == HEADER_DEFLATED
+                    || header == HEADER_DEFLATED_TEXT) {
+                if (data.hasArray()) {
+                    inflater.reset();
+                    inflater.setInput(
+                        data.array(),
+                        data.arrayOffset() + data.position(),
+                        length - 1);
+                } else {
+                    if (compressed.length < length - 1
+                            || compressed.length > MAX_RETAINED_CAPACITY) {
+                        compressed = new byte[Math.max(1024, length - 1)];
+                    }
+                    data.get(compressed, 0, length - 1);
+                    inflater.reset();
+                    inflater.setInput(compressed, 0, length - 1);
+                }
+                data.position(data.limit());
+
+                if (inflated.length > MAX_RETAINED_CAPACITY) {
+                    inflated = new byte[1024];
+                }
+                int size = 0;
+                while (!inflater.finished()) {
+                    if (size == inflated.length) {
+                        if (size >= MAX_INFLATED_SIZE) {
+                            throw new DataFormatException("Message too large");
+                        }
+                        inflated = grow(
+                            inflated,
+                            size,
+                            Math.min(
+                                MAX_INFLATED_SIZE,
+                                Math.max(size * 2, 4 * length)));
+                    }
+                    int n = inflater.inflate(inflated, size, inflated.length - size);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new DataFormatException("Truncated deflate stream");
+                    }
+                    size += n;
+                }
+
+                inflatedBuffer = wrap(inflatedBuffer, inflated, size);
+                payload = inflatedBuffer;
+                receivedDeflatedMessages++;
+            } else {
+                throw new DataFormatException("Unknown compression header " + header);
+            }
+
+            receivedBytes += payload.remaining();
+            receivedWireBytes += length;
+            return payload;
+        }
+    }
+
+    /**
+     * Frees the native memory of the {@link Deflater} and the
+     * {@link Inflater}. Must run once neither {@link #encode} nor
+     * {@link #decode} will be called anymore.
+     */
+    void release() {
+        synchronized (deflater) {
+            deflater.end();
+        }
+        synchronized (inflater) {
+            inflater.end();
+        }
+    }
+
+    private static byte[] grow(byte[] array, int size, int capacity) {
+        byte[] grown = new byte[capacity];
+        System.arraycopy(array, 0, grown, 0, size);
+        return grown;
+    }
+
+    /**
+     * Points a buffer at the first bytes of an array, reusing the buffer if it
+     * wraps the array already.
+     */
+    private static ByteBuffer wrap(ByteBuffer buffer, byte[] array, int size) {
+        if (buffer.array() != array) {
+            buffer = ByteBuffer.wrap(array);
+        }
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Gets the numbers of bytes before and after compression in each
+     * direction and the resulting ratios.
+     */
+    WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+
+        synchronized (deflater) {
+            stats.putDouble("sentBytes", sentBytes);
+            stats.putDouble("sentWireBytes", sentWireBytes);
+            stats.putDouble("sentDeflatedMessages", sentDeflatedMessages);
+            stats.putDouble(
+                "sentRatio",
+                sentWireBytes == 0 ? 1 : (double) sentBytes / sentWireBytes);
+        }
+        synchronized (inflater) {
+            stats.putDouble("receivedBytes", receivedBytes);
+            stats.putDouble("receivedWireBytes", receivedWireBytes);
+            stats.putDouble("receivedDeflatedMessages", receivedDeflatedMessages);
+            stats.putDouble(
+                "receivedRatio",
+                receivedWireBytes == 0
+                    ? 1
+                    : (double) receivedBytes / receivedWireBytes);
+        }
+        stats.putInt("threshold", threshold);
+        return stats;
+    }
+}
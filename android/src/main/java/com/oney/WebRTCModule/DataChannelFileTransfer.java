@@ -0,0 +1,400 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.webrtc.DataChannel;
+
+/**
+ * A transfer of a local file over a <tt>DataChannel</tt> which does not
+ * involve JS in the data path: the file is read or written with a
+ * {@link FileChannel} and JS only gets throttled
+ * <tt>dataChannelFileTransferProgress</tt> events and a {@link Promise}
+ * settled when the transfer ends.
+ */
+abstract class DataChannelFileTransfer {
+    /**
+     * The {@link Log} tag with which {@code DataChannelFileTransfer} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The minimum interval between two progress events.
+     */
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    protected final WebRTCModule webRTCModule;
+    protected final int peerConnectionId;
+    protected final int dataChannelId;
+    protected final DataChannel dataChannel;
+
+    private final FileChannel file;
+    private final long totalBytes;
+    private final Promise promise;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * The number of bytes transferred so far.
+     */
+    protected volatile long bytes;
+    private long lastProgressTime;
+
+    DataChannelFileTransfer(
+            WebRTCModule webRTCModule,
+            int peerConnectionId,
+            int dataChannelId,
+            DataChannel dataChannel,
+            FileChannel file,
+            long totalBytes,
+            Promise promise) {
+        this.webRTCModule = webRTCModule;
+        this.peerConnectionId = peerConnectionId;
+        this.dataChannelId = dataChannelId;
+        this.dataChannel = dataChannel;
+        this.file = file;
+        this.totalBytes = totalBytes;
+        this.promise = promise;
+    }
+
+    /**
+     * Turns a path or a <tt>file://</tt> URL into a {@link File}.
+     */
+    static File toFile(String path) {
+        return new File(path.startsWith("file://") ? path.substring(7) : path);
+    }
+
+    abstract String getDirection();
+
+    boolean isFinished() {
+        return finished.get();
+    }
+
+    /**
+     * Ends this transfer, closing the file and settling the {@code Promise}.
+     * Does nothing if this transfer has already ended.
+     *
+     * @param error the reason why the transfer failed or {@code null} if it
+     * succeeded
+     */
+    void finish(@Nullable String error) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            file.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close file", e);
+        }
+
+        if (error == null) {
+            reportProgress(true);
+
+            WritableMap result = Arguments.createMap();
+            result.putDouble("bytes", bytes);
+            promise.resolve(result);
+        } else {
+            Log.d(TAG, "File " + getDirection() + " failed: " + error);
+            promise.reject("E_FILE_TRANSFER", error);
+        }
+    }
+
+    protected FileChannel getFile() {
+        return file;
+    }
+
+    protected long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Emits a <tt>dataChannelFileTransferProgress</tt> event unless one has
+     * been emitted recently.
+     *
+     * @param force whether to emit the event regardless of the time of the
+     * last one
+     */
+    protected void reportProgress(boolean force) {
+        long now = System.nanoTime();
+        if (!force
+                && now - lastProgressTime < PROGRESS_INTERVAL_MS * 1000000) {
+            return;
+        }
+        lastProgressTime = now;
+
+        if (!webRTCModule.hasListeners(
+                "dataChannelFileTransferProgress",
+                peerConnectionId + "/" + dataChannelId + "/" + getDirection())) {
+            return;
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("id", dataChannelId);
+        params.putInt("peerConnectionId", peerConnectionId);
+        params.putString("direction", getDirection());
+        params.putDouble("bytes", bytes);
+        params.putDouble("totalBytes", totalBytes);
+        webRTCModule.sendEvent("dataChannelFileTransferProgress", params);
+    }
+
+    /**
+     * Streams a file into a <tt>DataChannel</tt> in binary messages of a
+     * fixed size, pausing while the buffered amount of the
+     * <tt>DataChannel</tt> is above {@link #HIGH_WATER_MARK} and resuming
+     * once it has dropped to {@link #LOW_WATER_MARK}. Runs on the executor of
+     * the <tt>PeerConnection</tt>, in bursts, so that it is ordered with the
+     * other sends on the <tt>DataChannel</tt>.
+     */
+    static final class Sender extends DataChannelFileTransfer {
+        static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+
+        /**
+         * The maximum size of a message which libwebrtc accepts.
+         */
+        static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+        private static final long HIGH_WATER_MARK = 1024 * 1024;
+        private static final long LOW_WATER_MARK = 256 * 1024;
+
+        private final ByteBuffer chunk;
+
+        /**
+         * The observer of the <tt>DataChannel</tt> which frames and sends the
+         * chunks.
+         */
+        private final DataChannelObserver observer;
+
+        /**
+         * Whether sending is paused until the buffered amount drops to
+         * {@link #LOW_WATER_MARK}.
+         */
+        private final AtomicBoolean waiting = new AtomicBoolean();
+
+        /**
+         * Opens the file at the given path for sending.
+         *
+         * @throws IOException if the file cannot be opened
+         */
+        static Sender open(
+                WebRTCModule webRTCModule,
+                int peerConnectionId,
+                int dataChannelId,
+                DataChannelObserver observer,
+                String path,
+                int chunkSize,
+                Promise promise)
+                throws IOException {
+            FileChannel file = new FileInputStream(toFile(path)).getChannel();
+
+            return new Sender(
+                webRTCModule,
+                peerConnectionId,
+                dataChannelId,
+                observer,
+                file,
+                file.size(),
+                chunkSize,
+                promise);
+        }
+
+        private Sender(
+                WebRTCModule webRTCModule,
+                int peerConnectionId,
+                int dataChannelId,
+                DataChannelObserver observer,
+                FileChannel file,
+                long totalBytes,
+                int chunkSize,
+                Promise promise) {
+            super(
+                webRTCModule,
+                peerConnectionId,
+                dataChannelId,
+                observer.getDataChannel(),
+                file,
+                totalBytes,
+                promise);
+
+            this.observer = observer;
+            // Compression works on arrays so the chunk is kept on the heap.
+            chunk = ByteBuffer.allocate(chunkSize);
+        }
+
+        @Override
+        String getDirection() {
+            return "send";
+        }
+
+        /**
+         * Sends chunks of the file until the buffered amount of the
+         * <tt>DataChannel</tt> reaches {@link #HIGH_WATER_MARK} or the whole
+         * file has been sent. Must run on the executor of the
+         * <tt>PeerConnection</tt>.
+         */
+        void sendChunks() {
+            while (!isFinished()) {
+                if (observer.getPendingAmount() >= HIGH_WATER_MARK) {
+                    waiting.set(true);
+                    // The buffered amount may have dropped before waiting
+                    // was set in which case no one is going to resume.
+                    if (observer.getPendingAmount() > LOW_WATER_MARK
+                            || !waiting.compareAndSet(true, false)) {
+                        return;
+                    }
+                }
+
+                int read;
+                chunk.clear();
+                try {
+                    read = getFile().read(chunk);
+                } catch (IOException e) {
+                    finish("Failed to read file: " + e.getMessage());
+                    return;
+                }
+                if (read < 0) {
+                    finish(null);
+                    return;
+                }
+                chunk.flip();
+
+                // DataChannel.send and the send scheduler copy the chunk so
+                // it may be reused.
+                DataChannel.Buffer message
+                    = observer.encodeMessage(chunk.array(), 0, read, true);
+                if (!observer.send(message)) {
+                    finish("DataChannel is not open");
+                    return;
+                }
+                bytes += read;
+                reportProgress(false);
+            }
+        }
+
+        /**
+         * Resumes sending if it is paused and the pending amount of the
+         * <tt>DataChannel</tt> has dropped to {@link #LOW_WATER_MARK}.
+         */
+        void onBufferedAmountChange(long amount) {
+            if (amount <= LOW_WATER_MARK && waiting.compareAndSet(true, false)) {
+                ThreadUtils.runOnPeerConnectionExecutor(
+                    peerConnectionId,
+                    "dataChannelSendFile",
+                    WebRTCModule.dataChannelOrderingKey(dataChannelId),
+                    this::sendChunks);
+            }
+        }
+    }
+
+    /**
+     * Writes the binary messages received by a <tt>DataChannel</tt> into a
+     * file until the expected number of bytes has been received. Runs on the
+     * worker which decodes the received messages so that neither inflating
+     * nor disk I/O holds up the network thread.
+     */
+    static final class Receiver extends DataChannelFileTransfer {
+        /**
+         * Creates (or truncates) the file at the given path for receiving.
+         *
+         * @throws IOException if the file cannot be created
+         */
+        static Receiver open(
+                WebRTCModule webRTCModule,
+                int peerConnectionId,
+                int dataChannelId,
+                DataChannel dataChannel,
+                String path,
+                long totalBytes,
+                Promise promise)
+                throws IOException {
+            FileChannel file = new FileOutputStream(toFile(path)).getChannel();
+
+            return new Receiver(
+                webRTCModule,
+                peerConnectionId,
+                dataChannelId,
+                dataChannel,
+                file,
+                totalBytes,
+                promise);
+        }
+
+        private Receiver(
+                WebRTCModule webRTCModule,
+                int peerConnectionId,
+                int dataChannelId,
+                DataChannel dataChannel,
+                FileChannel file,
+                long totalBytes,
+                Promise promise) {
+            super(
+                webRTCModule,
+                peerConnectionId,
+                dataChannelId,
+                dataChannel,
+                file,
+                totalBytes,
+                promise);
+        }
+
+        @Override
+        String getDirection() {
+            return "receive";
+        }
+
+        /**
+         * Determines whether this receiver takes the next binary message i.e.
+         * it has not ended and expects more bytes.
+         */
+        boolean isReceiving() {
+            return !isFinished() && bytes < getTotalBytes();
+        }
+
+        /**
+         * Writes a received message into the file, truncated to the number
+         * of bytes which are still expected.
+         *
+         * @param data the payload of the message; consumed
+         */
+        void write(ByteBuffer data) {
+            long remaining = getTotalBytes() - bytes;
+            if (remaining <= 0 || isFinished()) {
+                return;
+            }
+            if (data.remaining() > remaining) {
+                Log.w(TAG, "Dropping " + (data.remaining() - remaining)
+                    + " received bytes beyond the size of the file");
+                data.limit(data.position() + (int) remaining);
+            }
+
+            int length = data.remaining();
+            try {
+                while (data.hasRemaining()) {
+                    getFile().write(data);
+                }
+            } catch (IOException e) {
+                finish("Failed to write file: " + e.getMessage());
+                return;
+            }
+            bytes += length;
+
+            if (bytes >= getTotalBytes()) {
+                finish(null);
+            } else {
+                reportProgress(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the time the <tt>DataChannel</tt> observers spend on the network
+ * thread of libwebrtc per received message. Time spent there delays the
+ * packet processing of all <tt>PeerConnection</tt>s. Also counts the native
+ * <tt>DataChannel</tt>s which have not been disposed of yet.
+ */
+final class DataChannelMetrics {
+    /**
+     * Messages which take longer than this on the network thread are counted
+     * as slow.
+     */
+    private static final long SLOW_MESSAGE_THRESHOLD_NS = 1000000;
+
+    private static final AtomicLong messages = new AtomicLong();
+    private static final AtomicLong slowMessages = new AtomicLong();
+    private static final AtomicLong totalTime = new AtomicLong();
+    private static final AtomicLong maxTime = new AtomicLong();
+
+    private static final AtomicLong liveChannels = new AtomicLong();
+    private static final AtomicLong disposedChannels = new AtomicLong();
+
+    private DataChannelMetrics() {
+    }
+
+    /**
+     * Records the time spent on the network thread for a received message.
+     *
+     * @param time the time in nanoseconds
+     */
+    static void recordNetworkThreadTime(long time) {
+        messages.incrementAndGet();
+        totalTime.addAndGet(time);
+        if (time >= SLOW_MESSAGE_THRESHOLD_NS) {
+            slowMessages.incrementAndGet();
+        }
+
+        long max;
+        do {
+            max = maxTime.get();
+        } while (time > max && !maxTime.compareAndSet(max, time));
+    }
+
+    static void recordChannelCreated() {
+        liveChannels.incrementAndGet();
+    }
+
+    static void recordChannelDisposed() {
+        liveChannels.decrementAndGet();
+        disposedChannels.incrementAndGet();
+    }
+
+    /**
+     * Gets the metrics recorded so far; times in milliseconds.
+     */
+    static WritableMap getSnapshot() {
+        long count = messages.get();
+        long total = totalTime.get();
+
+        WritableMap snapshot = Arguments.createMap();
+        snapshot.putDouble("messages", count);
+        snapshot.putDouble("slowMessages", slowMessages.get());
+        snapshot.putDouble("networkThreadTime", total / 1000000.0);
+        snapshot.putDouble(
+            "averageNetworkThreadTime",
+            count == 0 ? 0 : total / 1000000.0 / count);
+        snapshot.putDouble("maxNetworkThreadTime", maxTime.get() / 1000000.0);
+        snapshot.putDouble("liveChannels", liveChannels.get());
+        snapshot.putDouble("disposedChannels", disposedChannels.get());
+        return snapshot;
+    }
+}
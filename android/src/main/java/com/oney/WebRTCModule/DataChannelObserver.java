@@ -1,9 +1,16 @@
 package com.oney.WebRTCModule;
 
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
 
 import androidx.annotation.Nullable;
 import android.util.Base64;
+import android.util.Log;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.WritableMap;
@@ -11,12 +18,159 @@ import com.facebook.react.bridge.WritableMap;
 import org.webrtc.DataChannel;
 
 class DataChannelObserver implements DataChannel.Observer {
+    /**
+     * The {@link Log} tag with which {@code DataChannelObserver} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
 
     private final int mId;
     private final DataChannel mDataChannel;
     private final int peerConnectionId;
     private final WebRTCModule webRTCModule;
 
+    /**
+     * Received messages are emitted as events one by one.
+     */
+    private static final int RECEIVE_EVENTS = 0;
+
+    /**
+     * Received messages are buffered until JS pulls them.
+     */
+    private static final int RECEIVE_PULL = 1;
+
+    /**
+     * Received messages are buffered and emitted in batches.
+     */
+    private static final int RECEIVE_COALESCED = 2;
+
+    /**
+     * How received messages are delivered to JS.
+     */
+    private volatile int receiveMode = RECEIVE_EVENTS;
+
+    /**
+     * How the messages in {@link #receiveBuffer} are delivered to JS. Differs
+     * from {@link #receiveMode} while the buffer drains after switching back
+     * to events; new messages are buffered until then to keep them in order.
+     */
+    private volatile int bufferedReceiveMode = RECEIVE_PULL;
+
+    /**
+     * The buffer in which received messages wait to be delivered to JS.
+     * Created when buffering is first enabled.
+     */
+    private volatile DataChannelReceiveBuffer receiveBuffer;
+
+    /**
+     * Whether {@link #receiveBuffer} has overflowed. The <tt>DataChannel</tt>
+     * is being closed then and the messages it still receives are dropped.
+     * Only accessed on {@link #messageExecutor}.
+     */
+    private boolean receiveBufferOverflowed;
+
+    /**
+     * The maximum size of a batch of messages emitted while the messages
+     * buffered for pulling are drained after buffering has been disabled.
+     */
+    private static final int DRAIN_BATCH_SIZE = 256 * 1024;
+
+    /**
+     * The maximum time in milliseconds a message waits in
+     * {@link #receiveBuffer} while coalescing.
+     */
+    private volatile int coalescingInterval;
+
+    /**
+     * The number of messages and bytes which, once buffered, are delivered
+     * right away while coalescing. The latter also caps the size of a batch.
+     */
+    private volatile int coalescingMaxMessages;
+    private volatile int coalescingMaxBytes;
+
+    /**
+     * The scheduled delivery of the buffered messages while coalescing.
+     * Guarded by {@link #flushLock}.
+     */
+    private ScheduledFuture<?> flushFuture;
+    private final Object flushLock = new Object();
+
+    /**
+     * The file being sent on the <tt>DataChannel</tt>, if any.
+     */
+    private volatile DataChannelFileTransfer.Sender fileSender;
+
+    /**
+     * The file into which the binary messages received by the
+     * <tt>DataChannel</tt> are being written, if any.
+     */
+    private volatile DataChannelFileTransfer.Receiver fileReceiver;
+
+    /**
+     * Decodes the received messages and hands them over to the file receiver,
+     * the receive buffer or JS, and emits the state changes of the
+     * <tt>DataChannel</tt>, off the network thread and in order.
+     */
+    private final Executor messageExecutor
+        = ThreadUtils.newSerialWorkerExecutor("dataChannelReceiveMessage");
+
+    /**
+     * The pool of the buffers which carry the received payloads to
+     * {@link #messageExecutor}.
+     */
+    private final ByteBufferPool payloadPool = ByteBufferPool.RECEIVED_PAYLOADS;
+
+    private final Utf8Decoder textDecoder = new Utf8Decoder();
+
+    /**
+     * The compression of the messages of the <tt>DataChannel</tt> or
+     * {@code null} if they are not compressed.
+     */
+    private volatile DataChannelCompression compression;
+
+    /**
+     * The scheduler of the messages sent on the <tt>DataChannel</tt> or
+     * {@code null} if they are handed to it directly.
+     */
+    private volatile DataChannelSendScheduler sendScheduler;
+
+    /**
+     * The minimum interval between two <tt>dataChannelBufferedAmountChanged</tt>
+     * events which neither cross {@link #bufferedAmountLowThreshold}, report
+     * an empty buffer nor report a failed send. The last change within an
+     * interval is reported at its end.
+     */
+    private static final long BUFFERED_AMOUNT_EVENT_INTERVAL_MS = 50;
+
+    /**
+     * The amount of buffered bytes at or below which the buffered amount is
+     * considered low.
+     */
+    private volatile long bufferedAmountLowThreshold;
+
+    /**
+     * The {@link System#nanoTime()} at which the last
+     * <tt>dataChannelBufferedAmountChanged</tt> event was emitted and the
+     * event scheduled at the end of the current interval, if any. Guarded by
+     * {@link #bufferedAmountEventLock}.
+     */
+    private long lastBufferedAmountEventTime;
+    private ScheduledFuture<?> bufferedAmountEventFuture;
+    private final Object bufferedAmountEventLock = new Object();
+
+    /**
+     * The total size of the messages sent by JS which have been handed to the
+     * <tt>DataChannel</tt> or rejected, counted the way JS counts them (see
+     * {@link #onSendProcessed}). JS accounts for the messages it has sent
+     * beyond this amount itself because they are not part of
+     * {@link #getPendingAmount()} yet.
+     */
+    private final AtomicLong processedAmount = new AtomicLong();
+
+    /**
+     * Whether the <tt>DataChannel</tt> has been disposed of.
+     */
+    private final AtomicBoolean released = new AtomicBoolean();
+
     DataChannelObserver(
             WebRTCModule webRTCModule,
             int peerConnectionId,
@@ -28,6 +182,231 @@ class DataChannelObserver implements DataChannel.Observer {
         mDataChannel = dataChannel;
     }
 
+    DataChannel getDataChannel() {
+        return mDataChannel;
+    }
+
+    /**
+     * Unregisters this observer from the <tt>DataChannel</tt> and disposes of
+     * the latter. Must run on the executor of the <tt>PeerConnection</tt> so
+     * that no send is in progress. Messages which have been received already
+     * are still delivered.
+     *
+     * @return {@code false} if the <tt>DataChannel</tt> has been disposed of
+     * already
+     */
+    boolean release() {
+        if (!released.compareAndSet(false, true)) {
+            return false;
+        }
+
+        cancelFileTransfers("DataChannel closed");
+        mDataChannel.unregisterObserver();
+        mDataChannel.dispose();
+        DataChannelMetrics.recordChannelDisposed();
+
+        DataChannelCompression compression = this.compression;
+        if (compression != null) {
+            // After the messages which are still to be decoded.
+            messageExecutor.execute(compression::release);
+        }
+        return true;
+    }
+
+    @Nullable
+    DataChannelCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the compression of the messages sent and received on the
+     * <tt>DataChannel</tt>. The remote end has to use the same.
+     *
+     * @param compression the compression or {@code null} to send and receive
+     * messages as they are
+     */
+    void setCompression(@Nullable DataChannelCompression compression) {
+        DataChannelCompression oldCompression = this.compression;
+        this.compression = compression;
+
+        if (oldCompression != null) {
+            // The messages which arrived before are still to be decoded with
+            // it. It encodes on the executor of the PeerConnection, on which
+            // this runs, so not anymore.
+            messageExecutor.execute(oldCompression::release);
+        }
+    }
+
+    void setSendScheduler(@Nullable DataChannelSendScheduler sendScheduler) {
+        this.sendScheduler = sendScheduler;
+    }
+
+    /**
+     * Sends a message on the <tt>DataChannel</tt>, through the send scheduler
+     * of the <tt>PeerConnection</tt> if it has one. Must run on the executor
+     * of the <tt>PeerConnection</tt>.
+     *
+     * @return {@code false} if the message could not be sent or queued
+     */
+    boolean send(DataChannel.Buffer buffer) {
+        DataChannelSendScheduler sendScheduler = this.sendScheduler;
+        return sendScheduler == null
+            ? mDataChannel.send(buffer)
+            : sendScheduler.send(mId, this, buffer);
+    }
+
+    /**
+     * Tells JS with a <tt>dataChannelError</tt> event that messages which the
+     * send scheduler had accepted could not be handed to the
+     * <tt>DataChannel</tt> after all.
+     */
+    void onQueuedSendsFailed(int count) {
+        WritableMap params = Arguments.createMap();
+        params.putInt("id", mId);
+        params.putInt("peerConnectionId", peerConnectionId);
+        params.putString(
+            "message",
+            count + " queued message(s) could not be sent");
+        webRTCModule.sendEvent("dataChannelError", params);
+
+        // They no longer count towards the buffered amount.
+        reportBufferedAmount(true);
+    }
+
+    /**
+     * Gets the number of bytes sent on the <tt>DataChannel</tt> which have
+     * not been transmitted yet, including the ones held back by the send
+     * scheduler.
+     */
+    long getPendingAmount() {
+        if (released.get()) {
+            return 0;
+        }
+
+        long amount;
+        try {
+            amount = mDataChannel.bufferedAmount();
+        } catch (IllegalStateException e) {
+            // Disposed of concurrently (on the executor of the
+            // PeerConnection) while called from another thread.
+            return 0;
+        }
+
+        DataChannelSendScheduler sendScheduler = this.sendScheduler;
+        return sendScheduler == null
+            ? amount
+            : amount + sendScheduler.getQueuedAmount(mId);
+    }
+
+    /**
+     * Records that a message sent by JS has been handed to the
+     * <tt>DataChannel</tt> or rejected. Must run on the executor of the
+     * <tt>PeerConnection</tt>, followed by {@link #reportBufferedAmount} once
+     * the messages of a call have been processed.
+     *
+     * @param length the length of the UTF-8 encoding of a text message or of
+     * the payload of a binary message, before compression
+     */
+    void onSendProcessed(long length) {
+        processedAmount.addAndGet(length);
+    }
+
+    /**
+     * Tells JS about the buffered and the processed amounts after messages
+     * sent by JS have been processed.
+     *
+     * @param failed whether any of the messages was rejected in which case JS
+     * is told right away rather than at the end of the current interval
+     */
+    void reportBufferedAmount(boolean failed) {
+        long processed = processedAmount.get();
+        emitBufferedAmountChanged(processed, getPendingAmount(), false, failed);
+    }
+
+    /**
+     * Frames a message to be sent on the <tt>DataChannel</tt>, compressing it
+     * if compression is enabled.
+     */
+    DataChannel.Buffer encodeMessage(
+            byte[] payload,
+            int offset,
+            int length,
+            boolean binary) {
+        DataChannelCompression compression = this.compression;
+        return compression == null
+            ? new DataChannel.Buffer(
+                ByteBuffer.wrap(payload, offset, length),
+                binary)
+            : compression.encode(payload, offset, length, binary);
+    }
+
+    /**
+     * Enables or disables the buffering of received messages. While enabled,
+     * JS is notified with a <tt>dataChannelMessagesAvailable</tt> event and
+     * pulls the messages with {@link #pollMessages}. When disabled, JS stops
+     * pulling and the messages which are still buffered are drained in
+     * <tt>dataChannelReceiveMessages</tt> events from within the same call, so
+     * no message received after the switch can overtake them.
+     */
+    void setBufferedReceive(boolean enabled) {
+        if (enabled) {
+            ensureReceiveBuffer();
+            bufferedReceiveMode = RECEIVE_PULL;
+            receiveMode = RECEIVE_PULL;
+        } else if (receiveMode == RECEIVE_PULL) {
+            bufferedReceiveMode = RECEIVE_COALESCED;
+            receiveMode = RECEIVE_EVENTS;
+            messageExecutor.execute(this::flushMessages);
+        }
+    }
+
+    /**
+     * Enables or disables the coalescing of received messages. While enabled,
+     * the messages are emitted in order in <tt>dataChannelReceiveMessages</tt>
+     * events, each carrying a batch of messages (see
+     * {@link DataChannelReceiveBuffer#poll}).
+     *
+     * @param interval the maximum time in milliseconds a message is held back;
+     * 0 to disable coalescing
+     * @param maxMessages the number of buffered messages which are delivered
+     * right away; 0 for no limit
+     * @param maxBytes the number of buffered bytes which are delivered right
+     * away and the maximum size of a batch; 0 for no limit
+     */
+    void setReceiveCoalescing(int interval, int maxMessages, int maxBytes) {
+        if (interval > 0) {
+            coalescingInterval = interval;
+            coalescingMaxMessages = maxMessages > 0 ? maxMessages : Integer.MAX_VALUE;
+            coalescingMaxBytes = maxBytes > 0 ? maxBytes : Integer.MAX_VALUE;
+            ensureReceiveBuffer();
+            bufferedReceiveMode = RECEIVE_COALESCED;
+            receiveMode = RECEIVE_COALESCED;
+            // Deliver whatever may have been buffered in another mode.
+            scheduleFlush(interval);
+        } else if (receiveMode == RECEIVE_COALESCED) {
+            receiveMode = RECEIVE_EVENTS;
+            scheduleFlush(0);
+        }
+    }
+
+    private synchronized void ensureReceiveBuffer() {
+        if (receiveBuffer == null) {
+            receiveBuffer = new DataChannelReceiveBuffer();
+        }
+    }
+
+    /**
+     * Removes buffered messages (see {@link DataChannelReceiveBuffer#poll}).
+     *
+     * @return the removed messages or {@code null} if buffering has never
+     * been enabled
+     */
+    @Nullable
+    WritableMap pollMessages(int maxBytes) {
+        DataChannelReceiveBuffer receiveBuffer = this.receiveBuffer;
+        return receiveBuffer == null ? null : receiveBuffer.poll(maxBytes);
+    }
+
     @Nullable
     private String dataChannelStateString(DataChannel.State dataChannelState) {
         switch (dataChannelState) {
@@ -43,32 +422,306 @@ class DataChannelObserver implements DataChannel.Observer {
         return null;
     }
 
+    /**
+     * Starts sending a file unless one is being sent already.
+     *
+     * @return {@code false} if a file is being sent already
+     */
+    synchronized boolean startFileSender(DataChannelFileTransfer.Sender sender) {
+        if (fileSender != null && !fileSender.isFinished()) {
+            return false;
+        }
+        fileSender = sender;
+        sender.sendChunks();
+        return true;
+    }
+
+    /**
+     * Starts writing the received binary messages into a file unless they are
+     * being written into another one already.
+     *
+     * @return {@code false} if a file is being received already
+     */
+    synchronized boolean startFileReceiver(DataChannelFileTransfer.Receiver receiver) {
+        if (fileReceiver != null && !fileReceiver.isFinished()) {
+            return false;
+        }
+        fileReceiver = receiver;
+        return true;
+    }
+
+    /**
+     * Aborts the file transfers on the <tt>DataChannel</tt>, if any.
+     */
+    void cancelFileTransfers(String reason) {
+        DataChannelFileTransfer.Sender sender = fileSender;
+        if (sender != null) {
+            sender.finish(reason);
+        }
+        DataChannelFileTransfer.Receiver receiver = fileReceiver;
+        if (receiver != null) {
+            receiver.finish(reason);
+        }
+    }
+
+    void setBufferedAmountLowThreshold(long bufferedAmountLowThreshold) {
+        this.bufferedAmountLowThreshold = bufferedAmountLowThreshold;
+    }
+
     @Override
-    public void onBufferedAmountChange(long amount) {
+    public void onBufferedAmountChange(long previousAmount) {
+        DataChannelSendScheduler sendScheduler = this.sendScheduler;
+        if (sendScheduler != null
+                && mDataChannel.bufferedAmount() < previousAmount) {
+            sendScheduler.scheduleDrain();
+        }
+
+        // Read before the amount so that a message handed over in between is
+        // counted twice by JS rather than not at all.
+        long processed = processedAmount.get();
+        long amount = getPendingAmount();
+
+        DataChannelFileTransfer.Sender sender = fileSender;
+        if (sender != null) {
+            sender.onBufferedAmountChange(amount);
+        }
+
+        // The buffered amount changes whenever a message is sent or leaves
+        // the buffer so the events are throttled except for the ones which
+        // matter for flow control.
+        long threshold = bufferedAmountLowThreshold;
+        boolean low = previousAmount > threshold && amount <= threshold;
+
+        emitBufferedAmountChanged(processed, amount, low, low || amount == 0);
+    }
+
+    /**
+     * Emits a <tt>dataChannelBufferedAmountChanged</tt> event right away if it
+     * is urgent or the last one was emitted at least
+     * {@link #BUFFERED_AMOUNT_EVENT_INTERVAL_MS} ago. Otherwise, schedules an
+     * event with the then current amounts at the end of the interval.
+     */
+    private void emitBufferedAmountChanged(
+            long processed,
+            long amount,
+            boolean low,
+            boolean urgent) {
+        long now = System.nanoTime();
+        synchronized (bufferedAmountEventLock) {
+            long delayMs
+                = BUFFERED_AMOUNT_EVENT_INTERVAL_MS
+                    - (now - lastBufferedAmountEventTime) / 1000000;
+
+            if (!urgent && delayMs > 0) {
+                if (bufferedAmountEventFuture == null) {
+                    bufferedAmountEventFuture
+                        = ThreadUtils.schedule(
+                            this::emitDelayedBufferedAmountChanged,
+                            delayMs);
+                }
+                return;
+            }
+            lastBufferedAmountEventTime = now;
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("id", mId);
+        params.putInt("peerConnectionId", peerConnectionId);
+        params.putDouble("bufferedAmount", amount);
+        params.putDouble("processedAmount", processed);
+        params.putBoolean("low", low);
+        webRTCModule.sendEvent("dataChannelBufferedAmountChanged", params);
+    }
+
+    private void emitDelayedBufferedAmountChanged() {
+        synchronized (bufferedAmountEventLock) {
+            bufferedAmountEventFuture = null;
+        }
+
+        long processed = processedAmount.get();
+        emitBufferedAmountChanged(processed, getPendingAmount(), false, true);
     }
 
     @Override
     public void onMessage(DataChannel.Buffer buffer) {
+        long startTime = System.nanoTime();
+        try {
+            dispatchMessage(buffer);
+        } finally {
+            DataChannelMetrics.recordNetworkThreadTime(
+                System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Copies a received message out of the buffer of libwebrtc, which is only
+     * valid during the callback, and hands it to {@link #messageExecutor}.
+     * Runs on the network thread so it does nothing else.
+     */
+    private void dispatchMessage(DataChannel.Buffer buffer) {
+        // Messages are decoded as they were framed when they arrived.
+        DataChannelCompression compression = this.compression;
+        ByteBuffer payload = payloadPool.copyOf(buffer.data);
+        boolean binary = buffer.binary;
+
+        messageExecutor.execute(() -> {
+            try {
+                receiveMessage(compression, payload, binary);
+            } finally {
+                payloadPool.release(payload);
+            }
+        });
+    }
+
+    /**
+     * Decodes a received message and hands it over to the file receiver, the
+     * receive buffer or JS depending on the receive mode. Runs on
+     * {@link #messageExecutor}, one message at a time, in order with the
+     * flushes of the receive buffer and the changes of the receive mode
+     * which take effect from the next message.
+     */
+    private void receiveMessage(
+            @Nullable DataChannelCompression compression,
+            ByteBuffer received,
+            boolean receivedBinary) {
+        if (receiveBufferOverflowed) {
+            return;
+        }
+
+        boolean binary
+            = compression == null
+                ? receivedBinary
+                : DataChannelCompression.isDecodedBinary(received, receivedBinary);
+        ByteBuffer data = decodeMessage(compression, received, receivedBinary);
+        if (data == null) {
+            return;
+        }
+
+        DataChannelFileTransfer.Receiver receiver = fileReceiver;
+        if (binary && receiver != null && receiver.isReceiving()) {
+            receiver.write(data);
+            return;
+        }
+
+        int mode = receiveMode;
+        DataChannelReceiveBuffer receiveBuffer = this.receiveBuffer;
+
+        if (mode == RECEIVE_EVENTS
+                && receiveBuffer != null
+                && !receiveBuffer.isEmpty()) {
+            // Keep the order with the messages which are still buffered.
+            mode = bufferedReceiveMode;
+        }
+        if (mode != RECEIVE_EVENTS
+                && !receiveBuffer.hasRoomFor(data.remaining())) {
+            onReceiveBufferOverflow();
+            return;
+        }
+        if (mode == RECEIVE_PULL) {
+            if (receiveBuffer.offer(data, binary)) {
+                emitMessagesAvailable();
+            }
+            return;
+        }
+        if (mode == RECEIVE_COALESCED) {
+            boolean first = receiveBuffer.offer(data, binary);
+
+            if (receiveMode != RECEIVE_COALESCED
+                    || receiveBuffer.exceeds(
+                        coalescingMaxMessages, coalescingMaxBytes)) {
+                scheduleFlush(0);
+            } else if (first) {
+                scheduleFlush(coalescingInterval);
+            }
+            return;
+        }
+
+        emitMessage(data, binary);
+    }
+
+    private void emitMessagesAvailable() {
         WritableMap params = Arguments.createMap();
         params.putInt("id", mId);
         params.putInt("peerConnectionId", peerConnectionId);
+        webRTCModule.sendEvent("dataChannelMessagesAvailable", params);
+    }
 
-        byte[] bytes;
-        if (buffer.data.hasArray()) {
-            bytes = buffer.data.array();
-        } else {
-            bytes = new byte[buffer.data.remaining()];
-            buffer.data.get(bytes);
+    /**
+     * Fails the <tt>DataChannel</tt> because JS does not keep up with the
+     * messages it receives and {@link #receiveBuffer} is full. Dropping
+     * messages would silently break the reliability and the order JS relies
+     * upon so JS is told with a <tt>dataChannelError</tt> event and the
+     * <tt>DataChannel</tt> is closed instead.
+     */
+    private void onReceiveBufferOverflow() {
+        receiveBufferOverflowed = true;
+        Log.e(TAG, "Closing DataChannel " + mId + " of PeerConnection "
+            + peerConnectionId + ": its receive buffer is full");
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("id", mId);
+        params.putInt("peerConnectionId", peerConnectionId);
+        params.putString("message", "Receive buffer overflow");
+        webRTCModule.sendEvent("dataChannelError", params);
+
+        // Like the other calls on the DataChannel.
+        ThreadUtils.runOnPeerConnectionExecutor(
+            peerConnectionId,
+            "dataChannelClose",
+            WebRTCModule.dataChannelOrderingKey(mId),
+            () -> {
+                if (!released.get()) {
+                    mDataChannel.close();
+                }
+            });
+    }
+
+    /**
+     * Unframes a received message, decompressing it if necessary.
+     *
+     * @return the payload of the message, valid until the next call, or
+     * {@code null} if it is malformed
+     */
+    @Nullable
+    private ByteBuffer decodeMessage(
+            @Nullable DataChannelCompression compression,
+            ByteBuffer data,
+            boolean binary) {
+        if (compression == null) {
+            return data;
+        }
+        try {
+            return compression.decode(data, binary);
+        } catch (DataFormatException e) {
+            Log.e(TAG, "Dropping malformed compressed message", e);
+            return null;
         }
+    }
+
+    /**
+     * Emits a received message as a <tt>dataChannelReceiveMessage</tt> event.
+     * Runs on {@link #messageExecutor}, one message at a time, so
+     * {@link #textDecoder} needs no synchronization.
+     *
+     * @param payload the payload of the message in a heap buffer; consumed
+     */
+    private void emitMessage(ByteBuffer payload, boolean binary) {
+        WritableMap params = Arguments.createMap();
+        params.putInt("id", mId);
+        params.putInt("peerConnectionId", peerConnectionId);
 
         String type;
         String data;
-        if (buffer.binary) {
+        if (binary) {
             type = "binary";
-            data = Base64.encodeToString(bytes, Base64.NO_WRAP);
+            data = Base64.encodeToString(
+                payload.array(),
+                payload.arrayOffset() + payload.position(),
+                payload.remaining(),
+                Base64.NO_WRAP);
         } else {
             type = "text";
-            data = new String(bytes, Charset.forName("UTF-8"));
+            data = textDecoder.decode(payload);
         }
         params.putString("type", type);
         params.putString("data", data);
@@ -76,12 +729,75 @@ class DataChannelObserver implements DataChannel.Observer {
         webRTCModule.sendEvent("dataChannelReceiveMessage", params);
     }
 
+    /**
+     * Schedules the delivery of the buffered messages after the given delay
+     * unless it is already scheduled to happen sooner.
+     */
+    private void scheduleFlush(long delayMs) {
+        synchronized (flushLock) {
+            if (flushFuture != null) {
+                if (delayMs >= flushFuture.getDelay(TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                flushFuture.cancel(false);
+            }
+            flushFuture = ThreadUtils.schedule(
+                () -> {
+                    synchronized (flushLock) {
+                        flushFuture = null;
+                    }
+                    messageExecutor.execute(this::flushMessages);
+                },
+                delayMs);
+        }
+    }
+
+    /**
+     * Emits the buffered messages in batches of at most
+     * {@link #coalescingMaxBytes}. Runs on {@link #messageExecutor} so the
+     * batches are emitted in order with each other and with the messages
+     * emitted one by one: a message only bypasses the buffer once it is
+     * empty, i.e. after the last batch has been queued.
+     */
+    private void flushMessages() {
+        int maxBytes = coalescingMaxBytes;
+        if (maxBytes == 0) {
+            // Draining the messages buffered for pulling.
+            maxBytes = DRAIN_BATCH_SIZE;
+        }
+
+        DataChannelReceiveBuffer receiveBuffer = this.receiveBuffer;
+        while (!receiveBuffer.isEmpty()) {
+            WritableMap params = receiveBuffer.poll(maxBytes);
+            params.putInt("id", mId);
+            params.putInt("peerConnectionId", peerConnectionId);
+            webRTCModule.sendEvent("dataChannelReceiveMessages", params);
+        }
+    }
+
     @Override
     public void onStateChange() {
-        WritableMap params = Arguments.createMap();
-        params.putInt("id", mId);
-        params.putInt("peerConnectionId", peerConnectionId);
-        params.putString("state", dataChannelStateString(mDataChannel.state()));
-        webRTCModule.sendEvent("dataChannelStateChanged", params);
+        DataChannel.State state = mDataChannel.state();
+        if (state == DataChannel.State.CLOSED) {
+            cancelFileTransfers("DataChannel closed");
+
+            // The DataChannel cannot be disposed of from within its own
+            // callback.
+            PeerConnectionObserver pco
+                = webRTCModule.getPeerConnectionObserver(peerConnectionId);
+            if (pco != null) {
+                pco.releaseDataChannel(mId, this);
+            }
+        }
+
+        // Behind the messages received before the state changed.
+        String stateString = dataChannelStateString(state);
+        messageExecutor.execute(() -> {
+            WritableMap params = Arguments.createMap();
+            params.putInt("id", mId);
+            params.putInt("peerConnectionId", peerConnectionId);
+            params.putString("state", stateString);
+            webRTCModule.sendEvent("dataChannelStateChanged", params);
+        });
     }
 }
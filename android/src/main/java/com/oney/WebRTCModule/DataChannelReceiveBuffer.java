@@ -0,0 +1,258 @@
+package com.oney.WebRTCModule;
+
+import android.util.Base64;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Buffers the messages received by a <tt>DataChannel</tt> in a growable byte
+ * ring until JS pulls them with {@link #poll}. Each poll crosses the bridge
+ * once for many messages and Base64-encodes all of their binary payloads as a
+ * single string rather than emitting one event and one Base64 string per
+ * message.
+ */
+class DataChannelReceiveBuffer {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int INITIAL_MESSAGE_CAPACITY = 64;
+
+    /**
+     * The maximum number of payload bytes and messages buffered. The remote
+     * peer cannot be slowed down from here so the owner of this buffer has to
+     * fail the <tt>DataChannel</tt> once there is no room (see
+     * {@link #hasRoomFor}) rather than let the ring grow without bound.
+     */
+    static final int MAX_SIZE = 16 * 1024 * 1024;
+    static final int MAX_MESSAGES = 1024 * 1024;
+
+    /**
+     * The payloads of the buffered messages.
+     */
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int bytesHead;
+    private int bytesSize;
+
+    /**
+     * The lengths of the buffered messages shifted left by one with the
+     * lowest bit set for binary messages.
+     */
+    private int[] messages = new int[INITIAL_MESSAGE_CAPACITY];
+    private int messagesHead;
+    private int messagesSize;
+
+    /**
+     * Whether JS has been notified that there are messages to poll and has
+     * not polled all of them yet.
+     */
+    private boolean notified;
+
+    private final Utf8Decoder textDecoder = new Utf8Decoder();
+
+    /**
+     * Appends a message to this buffer.
+     *
+     * @param data the payload of the message; consumed
+     * @param binary whether the message is binary
+     * @return {@code true} if JS is to be notified that there are messages to
+     * poll
+     */
+    synchronized boolean offer(ByteBuffer data, boolean binary) {
+        int length = data.remaining();
+
+        ensureCapacity(length);
+
+        int tail = (bytesHead + bytesSize) % bytes.length;
+        int first = Math.min(length, bytes.length - tail);
+        data.get(bytes, tail, first);
+        data.get(bytes, 0, length - first);
+        bytesSize += length;
+
+        messages[(messagesHead + messagesSize) % messages.length]
+            = (length << 1) | (binary ? 1 : 0);
+        messagesSize++;
+
+        if (notified) {
+            return false;
+        }
+        notified = true;
+        return true;
+    }
+
+    /**
+     * Determines whether a message with a payload of the given length may be
+     * offered without exceeding {@link #MAX_SIZE} or {@link #MAX_MESSAGES}.
+     * A single message is always accepted into an empty buffer.
+     */
+    synchronized boolean hasRoomFor(int length) {
+        return messagesSize == 0
+            || (bytesSize + length <= MAX_SIZE
+                && messagesSize < MAX_MESSAGES);
+    }
+
+    synchronized boolean isEmpty() {
+        return messagesSize == 0;
+    }
+
+    /**
+     * Determines whether at least the given number of messages or bytes are
+     * buffered.
+     */
+    synchronized boolean exceeds(int maxMessages, int maxBytes) {
+        return messagesSize >= maxMessages || bytesSize >= maxBytes;
+    }
+
+    /**
+     * Removes buffered messages, in order, for as long as their total size
+     * does not exceed the given limit. At least one message is removed if
+     * there is any.
+     *
+     * @param maxBytes the maximum total size of the messages to remove
+     * @return a map with the Base64-encoded concatenated payloads of the
+     * binary messages as <tt>data</tt>, the messages as <tt>messages</tt> (the
+     * text for text messages and the length of the payload within
+     * <tt>data</tt> for binary messages) and the number of messages which
+     * remain buffered as <tt>remaining</tt>
+     */
+    synchronized WritableMap poll(int maxBytes) {
+        // Determine how many messages fit and how many binary bytes they carry.
+        int count = 0;
+        int totalBytes = 0;
+        int binaryBytes = 0;
+
+        while (count < messagesSize) {
+            int message = messages[(messagesHead + count) % messages.length];
+            int length = message >>> 1;
+
+            if (count > 0 && totalBytes + length > maxBytes) {
+                break;
+            }
+            count++;
+            totalBytes += length;
+            if ((message & 1) != 0) {
+                binaryBytes += length;
+            }
+        }
+
+        byte[] binary = new byte[binaryBytes];
+        int binaryOffset = 0;
+        WritableArray result = Arguments.createArray();
+
+        for (int i = 0; i < count; i++) {
+            int message = messages[messagesHead];
+            int length = message >>> 1;
+
+            messagesHead = (messagesHead + 1) % messages.length;
+            messagesSize--;
+            if ((message & 1) != 0) {
+                read(binary, binaryOffset, length);
+                binaryOffset += length;
+                result.pushInt(length);
+            } else {
+                result.pushString(readText(length));
+            }
+        }
+
+        if (messagesSize == 0) {
+            notified = false;
+        }
+        shrinkIfDrained();
+
+        WritableMap chunk = Arguments.createMap();
+        chunk.putString("data", Base64.encodeToString(binary, Base64.NO_WRAP));
+        chunk.putArray("messages", result);
+        chunk.putInt("remaining", messagesSize);
+        return chunk;
+    }
+
+    /**
+     * Decodes the next text message of the given length, in place unless it
+     * wraps around the end of the ring.
+     */
+    private String readText(int length) {
+        String text;
+
+        if (bytesHead + length <= bytes.length) {
+            text = textDecoder.decode(bytes, bytesHead, length);
+            bytesHead = (bytesHead + length) % bytes.length;
+            bytesSize -= length;
+        } else {
+            byte[] wrapped = new byte[length];
+            read(wrapped, 0, length);
+            text = textDecoder.decode(wrapped, 0, length);
+        }
+        return text;
+    }
+
+    private void read(byte[] dst, int offset, int length) {
+        int first = Math.min(length, bytes.length - bytesHead);
+        System.arraycopy(bytes, bytesHead, dst, offset, first);
+        System.arraycopy(bytes, 0, dst, offset + first, length - first);
+        bytesHead = (bytesHead + length) % bytes.length;
+        bytesSize -= length;
+    }
+
+    /**
+     * Makes room for one more message with a payload of the given length.
+     * The ring grows up to {@link #MAX_SIZE} as long as the owner checks
+     * {@link #hasRoomFor} first.
+     */
+    private void ensureCapacity(int length) {
+        if (bytesSize + length > bytes.length) {
+            int capacity = bytes.length;
+            while (bytesSize + length > capacity) {
+                capacity *= 2;
+            }
+            resizeBytes(capacity);
+        }
+
+        if (messagesSize == messages.length) {
+            resizeMessages(messages.length * 2);
+        }
+    }
+
+    /**
+     * Gives back the memory grown into during a burst once the rings have
+     * drained to a quarter of their capacity or less. Each ring is halved
+     * until it is back to its initial capacity or at least a quarter full, so
+     * a buffer which hovers around a capacity does not resize on every poll.
+     */
+    private void shrinkIfDrained() {
+        int capacity = bytes.length;
+        while (capacity > INITIAL_CAPACITY && bytesSize <= capacity / 4) {
+            capacity /= 2;
+        }
+        if (capacity != bytes.length) {
+            resizeBytes(capacity);
+        }
+
+        int messageCapacity = messages.length;
+        while (messageCapacity > INITIAL_MESSAGE_CAPACITY
+                && messagesSize <= messageCapacity / 4) {
+            messageCapacity /= 2;
+        }
+        if (messageCapacity != messages.length) {
+            resizeMessages(messageCapacity);
+        }
+    }
+
+    private void resizeBytes(int capacity) {
+        byte[] newBytes = new byte[capacity];
+        int size = bytesSize;
+        read(newBytes, 0, size);
+        bytes = newBytes;
+        bytesHead = 0;
+        bytesSize = size;
+    }
+
+    private void resizeMessages(int capacity) {
+        int[] newMessages = new int[capacity];
+        for (int i = 0; i < messagesSize; i++) {
+            newMessages[i] = messages[(messagesHead + i) % messages.length];
+        }
+        messages = newMessages;
+        messagesHead = 0;
+    }
+}
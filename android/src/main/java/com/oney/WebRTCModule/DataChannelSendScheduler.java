@@ -0,0 +1,348 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.webrtc.DataChannel;
+
+/**
+ * Schedules the messages sent on the <tt>DataChannel</tt>s of a
+ * <tt>PeerConnection</tt> so that a bulk transfer on one of them does not
+ * fill the SCTP send buffer ahead of the messages of the others. Messages are
+ * held in per-<tt>DataChannel</tt> queues and handed to
+ * {@link DataChannel#send} only while the total buffered amount of the
+ * <tt>DataChannel</tt>s is below a budget. Queues of a higher priority are
+ * drained first; queues of the same priority share the budget in proportion
+ * to their weights (deficit round robin).
+ */
+final class DataChannelSendScheduler {
+    /**
+     * The {@link Log} tag with which {@code DataChannelSendScheduler} is to
+     * log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    static final long DEFAULT_BUDGET = 256 * 1024;
+
+    /**
+     * The number of bytes a queue of weight 1 may send per round.
+     */
+    private static final int QUANTUM = 16 * 1024;
+
+    private final int peerConnectionId;
+
+    /**
+     * The total buffered amount of the <tt>DataChannel</tt>s above which
+     * queued messages are held back. Only accessed on the executor of the
+     * <tt>PeerConnection</tt>.
+     */
+    private long budget = DEFAULT_BUDGET;
+
+    /**
+     * The queues and their state. Only modified on the executor of the
+     * <tt>PeerConnection</tt> but read by {@link #getQueuedAmount} on other
+     * threads so guarded by the lock of this scheduler. {@link DataChannel}
+     * is never called while holding it: {@link DataChannel#send} blocks on
+     * the signaling thread of libwebrtc which calls back into
+     * {@link #getQueuedAmount} from <tt>onBufferedAmountChange</tt>.
+     */
+    private final SparseArray<Queue> queues = new SparseArray<>();
+
+    /**
+     * The index in {@link #queues} of the queue whose turn it is.
+     */
+    private int cursor;
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    DataChannelSendScheduler(int peerConnectionId) {
+        this.peerConnectionId = peerConnectionId;
+    }
+
+    void setBudget(long budget) {
+        this.budget = Math.max(1, budget);
+        drain();
+    }
+
+    /**
+     * Sets the priority and the weight of a <tt>DataChannel</tt>. Must run on
+     * the executor of the <tt>PeerConnection</tt>.
+     *
+     * @param priority the messages of the <tt>DataChannel</tt>s with the
+     * highest priority are sent first
+     * @param weight the share of the budget of the <tt>DataChannel</tt>
+     * relative to the others of the same priority
+     */
+    void setPriority(
+            int dataChannelId,
+            DataChannelObserver observer,
+            int priority,
+            int weight) {
+        synchronized (this) {
+            Queue queue = getQueue(dataChannelId, observer);
+            queue.priority = priority;
+            queue.weight = Math.max(1, weight);
+        }
+        drain();
+    }
+
+    /**
+     * Forgets a <tt>DataChannel</tt>, dropping the messages queued on it.
+     */
+    synchronized void remove(int dataChannelId) {
+        int index = queues.indexOfKey(dataChannelId);
+        if (index >= 0) {
+            queues.removeAt(index);
+            if (cursor > index) {
+                cursor--;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of bytes queued on a <tt>DataChannel</tt> which have
+     * not been handed to it yet.
+     */
+    synchronized long getQueuedAmount(int dataChannelId) {
+        Queue queue = queues.get(dataChannelId);
+        return queue == null ? 0 : queue.queuedBytes;
+    }
+
+    /**
+     * Sends a message on a <tt>DataChannel</tt> right away if nothing is
+     * queued and the budget allows it or queues it otherwise. Must run on the
+     * executor of the <tt>PeerConnection</tt>.
+     *
+     * @param buffer the message; not retained unless it is queued in which
+     * case it is copied
+     * @return {@code false} if the <tt>DataChannel</tt> is not open
+     */
+    boolean send(
+            int dataChannelId,
+            DataChannelObserver observer,
+            DataChannel.Buffer buffer) {
+        DataChannel dataChannel = observer.getDataChannel();
+        if (dataChannel.state() != DataChannel.State.OPEN) {
+            return false;
+        }
+
+        boolean idle;
+        synchronized (this) {
+            getQueue(dataChannelId, observer);
+            idle = isIdle();
+        }
+        if (idle && getBufferedAmount() < budget) {
+            return dataChannel.send(buffer);
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(buffer.data.remaining());
+        data.put(buffer.data);
+        data.flip();
+        synchronized (this) {
+            Queue queue = getQueue(dataChannelId, observer);
+            queue.messages.add(new DataChannel.Buffer(data, buffer.binary));
+            queue.queuedBytes += data.remaining();
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Drains the queues on the executor of the <tt>PeerConnection</tt>.
+     * Invoked when the buffered amount of a <tt>DataChannel</tt> drops.
+     */
+    void scheduleDrain() {
+        if (!drainScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        ThreadUtils.runUrgentlyOnPeerConnectionExecutor(
+            peerConnectionId,
+            "dataChannelSendScheduler",
+            "dataChannelSendScheduler",
+            () -> {
+                drainScheduled.set(false);
+                drain();
+            });
+    }
+
+    private Queue getQueue(int dataChannelId, DataChannelObserver observer) {
+        Queue queue = queues.get(dataChannelId);
+        if (queue == null) {
+            queue = new Queue(observer);
+            queues.put(dataChannelId, queue);
+        }
+        return queue;
+    }
+
+    private boolean isIdle() {
+        for (int i = 0, size = queues.size(); i < size; i++) {
+            if (!queues.valueAt(i).messages.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the total buffered amount of the <tt>DataChannel</tt>s. Must not
+     * be called while holding the lock of this scheduler.
+     */
+    private long getBufferedAmount() {
+        DataChannel[] dataChannels;
+        synchronized (this) {
+            dataChannels = new DataChannel[queues.size()];
+            for (int i = 0; i < dataChannels.length; i++) {
+                dataChannels[i] = queues.valueAt(i).observer.getDataChannel();
+            }
+        }
+
+        long amount = 0;
+        for (DataChannel dataChannel : dataChannels) {
+            try {
+                amount += dataChannel.bufferedAmount();
+            } catch (IllegalStateException e) {
+                // Disposed of along with its PeerConnection.
+            }
+        }
+        return amount;
+    }
+
+    /**
+     * Hands queued messages to their <tt>DataChannel</tt>s for as long as the
+     * budget allows. The messages are taken off their queues under the lock
+     * and sent after it has been released. Must run on the executor of the
+     * <tt>PeerConnection</tt>.
+     */
+    private void drain() {
+        long buffered = getBufferedAmount();
+
+        while (buffered < budget) {
+            Queue queue;
+            DataChannel.Buffer message;
+            int length;
+
+            synchronized (this) {
+                queue = nextQueue();
+                if (queue == null) {
+                    return;
+                }
+                message = queue.messages.poll();
+                length = message.data.remaining();
+                queue.deficit -= length;
+                queue.queuedBytes -= length;
+            }
+
+            buffered += length;
+            if (!send(queue.observer.getDataChannel(), message)) {
+                onSendFailed(queue);
+            }
+        }
+    }
+
+    /**
+     * Picks the queue whose next message is to be sent: one of the highest
+     * priority which has messages, in turn, each sending up to its deficit
+     * per round (deficit round robin).
+     *
+     * @return the queue or {@code null} if all queues are empty
+     */
+    private Queue nextQueue() {
+        int size = queues.size();
+        int priority = Integer.MIN_VALUE;
+        boolean idle = true;
+
+        for (int i = 0; i < size; i++) {
+            Queue queue = queues.valueAt(i);
+            if (!queue.messages.isEmpty()) {
+                idle = false;
+                priority = Math.max(priority, queue.priority);
+            }
+        }
+        if (idle) {
+            return null;
+        }
+
+        while (true) {
+            if (cursor >= size) {
+                cursor = 0;
+            }
+            Queue queue = queues.valueAt(cursor);
+            if (queue.priority == priority && !queue.messages.isEmpty()) {
+                if (!queue.credited) {
+                    queue.deficit += (long) QUANTUM * queue.weight;
+                    queue.credited = true;
+                }
+                if (queue.messages.peek().data.remaining() <= queue.deficit) {
+                    // Its turn goes on, also after the budget is exhausted.
+                    return queue;
+                }
+                // Its turn is over; the deficit carries over to the next.
+                queue.credited = false;
+            } else {
+                queue.deficit = 0;
+                queue.credited = false;
+            }
+            cursor++;
+        }
+    }
+
+    private static boolean send(
+            DataChannel dataChannel,
+            DataChannel.Buffer message) {
+        try {
+            return dataChannel.send(message);
+        } catch (IllegalStateException e) {
+            // Disposed of along with its PeerConnection.
+            return false;
+        }
+    }
+
+    /**
+     * Drops the messages queued on a <tt>DataChannel</tt> which has failed to
+     * send one of them, i.e. which is not open anymore, and reports them as
+     * failed. They have been reported as sent already.
+     */
+    private void onSendFailed(Queue queue) {
+        int count;
+        synchronized (this) {
+            count = queue.messages.size() + 1;
+            queue.messages.clear();
+            queue.queuedBytes = 0;
+            queue.deficit = 0;
+        }
+
+        Log.w(TAG, "Dropping " + count + " queued DataChannel message(s): "
+            + "DataChannel is not open or its buffer is full");
+        queue.observer.onQueuedSendsFailed(count);
+    }
+
+    /**
+     * The messages queued on a <tt>DataChannel</tt>.
+     */
+    private static final class Queue {
+        final DataChannelObserver observer;
+        final ArrayDeque<DataChannel.Buffer> messages = new ArrayDeque<>();
+        long queuedBytes;
+        int priority;
+        int weight = 1;
+
+        /**
+         * The number of bytes the queue may still send in the current round.
+         */
+        long deficit;
+
+        /**
+         * Whether the queue has been credited its quantum in the current
+         * round.
+         */
+        boolean credited;
+
+        Queue(DataChannelObserver observer) {
+            this.observer = observer;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.hardware.Camera;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.CameraEnumerationAndroid.CaptureFormat;
+import org.webrtc.VideoCodecInfo;
+
+/**
+ * Persists the capabilities of the device which are expensive to query (the
+ * support for the Camera2 API, the names, facing and capture formats of the
+ * cameras and the supported video codecs) across launches of the app. The
+ * cache is keyed by {@link Build#FINGERPRINT} so it is discarded whenever the
+ * system is updated. The camera part is discarded when a camera which is not
+ * known to the cache becomes available (e.g. an external camera is plugged) or
+ * a cached one disappears (e.g. it is unplugged) and, with the Camera1 API,
+ * when the number of cameras changes.
+ */
+class DeviceCapabilityCache {
+    /**
+     * The {@link Log} tag with which {@code DeviceCapabilityCache} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    private static final String PREFERENCES_NAME = "WebRTCModule.capabilities";
+    private static final String FINGERPRINT_KEY = "fingerprint";
+    private static final String CAPABILITIES_KEY = "capabilities";
+
+    private static final String CAMERA2_SUPPORTED = "camera2Supported";
+    private static final String CAMERAS = "cameras";
+    private static final String CODECS = "codecs";
+    private static final String DEVICE_NAMES = "deviceNames";
+    private static final String DEVICES = "devices";
+
+    private final Context context;
+
+    /**
+     * The cached capabilities. Loaded from the {@code SharedPreferences} on
+     * first use.
+     */
+    private JSONObject capabilities;
+
+    private CameraManager.AvailabilityCallback availabilityCallback;
+
+    DeviceCapabilityCache(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    @Nullable
+    synchronized Boolean getCamera2Supported() {
+        Object value = getCapabilities().opt(CAMERA2_SUPPORTED);
+        return value instanceof Boolean ? (Boolean) value : null;
+    }
+
+    synchronized void putCamera2Supported(boolean supported) {
+        put(getCapabilities(), CAMERA2_SUPPORTED, supported);
+    }
+
+    @Nullable
+    synchronized String[] getDeviceNames() {
+        JSONArray names = getCameras().optJSONArray(DEVICE_NAMES);
+        if (names == null) {
+            return null;
+        }
+        try {
+            String[] result = new String[names.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = names.getString(i);
+            }
+            return result;
+        } catch (JSONException e) {
+            Log.w(TAG, "Invalid cached camera names", e);
+            return null;
+        }
+    }
+
+    synchronized void putDeviceNames(String[] deviceNames) {
+        JSONArray names = new JSONArray();
+        for (String name : deviceNames) {
+            names.put(name);
+        }
+        put(getCameras(), DEVICE_NAMES, names);
+    }
+
+    /**
+     * Gets a cached boolean property (e.g. the facing) of a camera.
+     */
+    @Nullable
+    synchronized Boolean getDeviceProperty(String deviceName, String property) {
+        Object value = getDevice(deviceName).opt(property);
+        return value instanceof Boolean ? (Boolean) value : null;
+    }
+
+    synchronized void putDeviceProperty(
+            String deviceName,
+            String property,
+            boolean value) {
+        put(getDevice(deviceName), property, value);
+    }
+
+    @Nullable
+    synchronized List<CaptureFormat> getSupportedFormats(String deviceName) {
+        JSONArray formats = getDevice(deviceName).optJSONArray("formats");
+        if (formats == null) {
+            return null;
+        }
+        try {
+            List<CaptureFormat> result = new ArrayList<>(formats.length());
+            for (int i = 0; i < formats.length(); i++) {
+                JSONArray f = formats.getJSONArray(i);
+                result.add(
+                    new CaptureFormat(
+                        f.getInt(0),
+                        f.getInt(1),
+                        new CaptureFormat.FramerateRange(f.getInt(2), f.getInt(3))));
+            }
+            return result;
+        } catch (JSONException e) {
+            Log.w(TAG, "Invalid cached capture formats", e);
+            return null;
+        }
+    }
+
+    synchronized void putSupportedFormats(
+            String deviceName,
+            List<CaptureFormat> formats) {
+        JSONArray array = new JSONArray();
+        for (CaptureFormat format : formats) {
+            array.put(
+                new JSONArray()
+                    .put(format.width)
+                    .put(format.height)
+                    .put(format.framerate.min)
+                    .put(format.framerate.max));
+        }
+        put(getDevice(deviceName), "formats", array);
+    }
+
+    /**
+     * Gets the cached supported video codecs of a codec factory.
+     *
+     * @param kind the kind of the codec factory e.g. <tt>encoder</tt>
+     */
+    @Nullable
+    synchronized VideoCodecInfo[] getSupportedCodecs(String kind) {
+        JSONArray codecs = getObject(getCapabilities(), CODECS).optJSONArray(kind);
+        if (codecs == null) {
+            return null;
+        }
+        try {
+            VideoCodecInfo[] result = new VideoCodecInfo[codecs.length()];
+            for (int i = 0; i < result.length; i++) {
+                JSONObject codec = codecs.getJSONObject(i);
+                JSONObject params = codec.getJSONObject("params");
+                Map<String, String> paramsMap = new HashMap<>();
+                for (Iterator<String> keys = params.keys(); keys.hasNext();) {
+                    String key = keys.next();
+                    paramsMap.put(key, params.getString(key));
+                }
+                result[i] = new VideoCodecInfo(codec.getString("name"), paramsMap);
+            }
+            return result;
+        } catch (JSONException e) {
+            Log.w(TAG, "Invalid cached video codecs", e);
+            return null;
+        }
+    }
+
+    synchronized void putSupportedCodecs(String kind, VideoCodecInfo[] codecs) {
+        JSONArray array = new JSONArray();
+        try {
+            for (VideoCodecInfo codec : codecs) {
+                JSONObject params = new JSONObject();
+                for (Map.Entry<String, String> e : codec.params.entrySet()) {
+                    params.put(e.getKey(), e.getValue());
+                }
+                array.put(
+                    new JSONObject()
+                        .put("name", codec.name)
+                        .put("params", params));
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to cache video codecs", e);
+            return;
+        }
+        put(getObject(getCapabilities(), CODECS), kind, array);
+    }
+
+    /**
+     * Discards the cached cameras.
+     */
+    synchronized void invalidateCameras() {
+        Log.d(TAG, "Invalidating cached cameras");
+        getCapabilities().remove(CAMERAS);
+        save();
+    }
+
+    /**
+     * Discards the cached cameras if their number differs from the number of
+     * cameras known to the Camera1 API. The Camera1 API has no availability
+     * callbacks so this is to be called whenever the cameras are about to be
+     * enumerated; it does not open any camera.
+     */
+    synchronized void validateCamera1Devices() {
+        String[] deviceNames = getDeviceNames();
+        if (deviceNames != null
+                && deviceNames.length != Camera.getNumberOfCameras()) {
+            invalidateCameras();
+        }
+    }
+
+    /**
+     * Starts discarding the cached cameras when a camera with an id which
+     * is not among the cached device names becomes available or a cached one
+     * is disconnected. Only meaningful for the Camera2 API whose device names
+     * are camera ids.
+     */
+    synchronized void watchCameraAvailability() {
+        if (availabilityCallback != null
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+
+        CameraManager cameraManager
+            = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        if (cameraManager == null) {
+            return;
+        }
+
+        availabilityCallback = new CameraManager.AvailabilityCallback() {
+            @Override
+            public void onCameraAvailable(String cameraId) {
+                // This is also invoked for every available camera right after
+                // registration so only unknown cameras invalidate the cache.
+                if (!isKnownDevice(cameraId)) {
+                    invalidateCameras();
+                }
+            }
+
+            @Override
+            public void onCameraUnavailable(String cameraId) {
+                // This is also invoked whenever a camera is opened, by this or
+                // another app, so only cameras which are gone invalidate the
+                // cache.
+                if (isCachedDevice(cameraId)
+                        && !isConnected(cameraManager, cameraId)) {
+                    invalidateCameras();
+                }
+            }
+        };
+        cameraManager.registerAvailabilityCallback(
+            availabilityCallback,
+            new Handler(Looper.getMainLooper()));
+    }
+
+    private synchronized boolean isKnownDevice(String deviceName) {
+        String[] deviceNames = getDeviceNames();
+        if (deviceNames == null) {
+            // Nothing cached, nothing to invalidate.
+            return true;
+        }
+        for (String name : deviceNames) {
+            if (name.equals(deviceName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized boolean isCachedDevice(String deviceName) {
+        String[] deviceNames = getDeviceNames();
+        return deviceNames != null && isKnownDevice(deviceName);
+    }
+
+    private static boolean isConnected(
+            CameraManager cameraManager,
+            String cameraId) {
+        try {
+            for (String id : cameraManager.getCameraIdList()) {
+                if (id.equals(cameraId)) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (CameraAccessException e) {
+            // Cannot tell so keep the cache.
+            Log.w(TAG, "Failed to list the cameras", e);
+            return true;
+        }
+    }
+
+    private JSONObject getCapabilities() {
+        if (capabilities == null) {
+            SharedPreferences preferences = getPreferences();
+            String json = null;
+
+            if (Build.FINGERPRINT.equals(
+                    preferences.getString(FINGERPRINT_KEY, null))) {
+                json = preferences.getString(CAPABILITIES_KEY, null);
+            }
+            if (json != null) {
+                try {
+                    capabilities = new JSONObject(json);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Discarding invalid cached capabilities", e);
+                }
+            }
+            if (capabilities == null) {
+                capabilities = new JSONObject();
+            }
+        }
+        return capabilities;
+    }
+
+    private JSONObject getCameras() {
+        return getObject(getCapabilities(), CAMERAS);
+    }
+
+    private JSONObject getDevice(String deviceName) {
+        return getObject(getObject(getCameras(), DEVICES), deviceName);
+    }
+
+    /**
+     * Gets the object with the given key from the given object, creating it
+     * if necessary.
+     */
+    private static JSONObject getObject(JSONObject object, String key) {
+        JSONObject value = object.optJSONObject(key);
+        if (value == null) {
+            value = new JSONObject();
+            try {
+                object.put(key, value);
+            } catch (JSONException e) {
+                // Only thrown for null keys.
+                throw new IllegalArgumentException(e);
+            }
+        }
+        return value;
+    }
+
+    private void put(JSONObject object, String key, Object value) {
+        try {
+            object.put(key, value);
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to cache " + key, e);
+            return;
+        }
+        save();
+    }
+
+    private void save() {
+        getPreferences()
+            .edit()
+            .putString(FINGERPRINT_KEY, Build.FINGERPRINT)
+            .putString(CAPABILITIES_KEY, getCapabilities().toString())
+            .apply();
+    }
+
+    private SharedPreferences getPreferences() {
+        return context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,115 @@
+package com.oney.WebRTCModule;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Collects the events of {@link WebRTCModule} and emits them to JS as a
+ * single {@link #BATCH_EVENT} per UI frame or per configurable interval
+ * instead of one bridge message per event. Events are emitted in the order
+ * they were sent.
+ */
+class EventBatcher {
+    /**
+     * The name of the event which carries a batch of events. Its data is an
+     * array of <tt>{name, data}</tt> maps.
+     */
+    static final String BATCH_EVENT = "webRTCEventBatch";
+
+    interface Emitter {
+        void emit(String eventName, @Nullable Object data);
+    }
+
+    private final Emitter emitter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean enabled;
+
+    /**
+     * The interval in milliseconds between two batches. If 0, batches are
+     * aligned with UI frames.
+     */
+    private int interval;
+
+    private WritableArray pendingEvents;
+    private boolean flushScheduled;
+
+    private final Choreographer.FrameCallback frameCallback
+        = frameTimeNanos -> flush();
+
+    EventBatcher(Emitter emitter) {
+        this.emitter = emitter;
+    }
+
+    /**
+     * Enables or disables batching. Events which are pending when batching is
+     * disabled are emitted right away.
+     *
+     * @param enabled
+     * @param interval the interval in milliseconds between two batches; 0 to
+     * emit a batch per UI frame
+     */
+    void configure(boolean enabled, int interval) {
+        synchronized (this) {
+            this.enabled = enabled;
+            this.interval = Math.max(0, interval);
+        }
+        if (!enabled) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends an event, either right away or as part of the next batch.
+     */
+    void send(String eventName, @Nullable WritableMap params) {
+        synchronized (this) {
+            if (enabled) {
+                WritableMap event = Arguments.createMap();
+                event.putString("name", eventName);
+                if (params != null) {
+                    event.putMap("data", params);
+                }
+                if (pendingEvents == null) {
+                    pendingEvents = Arguments.createArray();
+                }
+                pendingEvents.pushMap(event);
+                if (!flushScheduled) {
+                    flushScheduled = true;
+                    scheduleFlush();
+                }
+                return;
+            }
+            if (pendingEvents != null) {
+                // Keep the order of the events sent while batching was
+                // enabled.
+                flush();
+            }
+        }
+        emitter.emit(eventName, params);
+    }
+
+    private void scheduleFlush() {
+        if (interval > 0) {
+            ThreadUtils.schedule(this::flush, interval);
+        } else {
+            mainHandler.post(() ->
+                Choreographer.getInstance().postFrameCallback(frameCallback));
+        }
+    }
+
+    private synchronized void flush() {
+        flushScheduled = false;
+        if (pendingEvents != null) {
+            emitter.emit(BATCH_EVENT, pendingEvents);
+            pendingEvents = null;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Records how long the runnables of {@link ThreadUtils} wait in their queues
+ * and run, per task name (the name of the originating {@code @ReactMethod}),
+ * flags the ones which run for too long and captures the stack of an executor
+ * thread which stalls.
+ */
+final class ExecutorWatchdog {
+    /**
+     * The {@link Log} tag with which {@code ExecutorWatchdog} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Tasks which run longer than this are reported as long tasks.
+     */
+    static final long LONG_TASK_THRESHOLD_MS = 200;
+
+    /**
+     * Tasks which are still running after this are reported as stalls along
+     * with the stack of the thread running them.
+     */
+    static final long STALL_THRESHOLD_MS = 1000;
+
+    /**
+     * How often the executor threads are checked for stalls while any of them
+     * is running a task.
+     */
+    private static final long CHECK_INTERVAL_MS = 250;
+
+    /**
+     * The minimum interval between two reports delivered to the
+     * {@link Listener}. Reports in between are counted but dropped.
+     */
+    private static final long REPORT_INTERVAL_MS = 5000;
+
+    /**
+     * The maximum number of stalls kept for {@link #getSnapshot}.
+     */
+    private static final int MAX_STALLS = 10;
+
+    /**
+     * The maximum number of stack frames captured for a stall.
+     */
+    private static final int MAX_STACK_FRAMES = 32;
+
+    interface Listener {
+        void onReport(WritableMap report);
+    }
+
+    private final Map<String, TaskStats> stats = new HashMap<>();
+    private final ArrayDeque<WritableMap> stalls = new ArrayDeque<>();
+    private final Map<Thread, RunningTask> runningTasks
+        = new ConcurrentHashMap<>();
+
+    private volatile Listener listener;
+    private long lastReportTime;
+    private int droppedReports;
+
+    /**
+     * The pending check for stalls, if any. The check is scheduled on the
+     * scheduler of {@link ThreadUtils} only while tasks are running so that an
+     * idle module does not wake up every {@link #CHECK_INTERVAL_MS}.
+     */
+    private ScheduledFuture<?> check;
+    private final Object checkLock = new Object();
+
+    /**
+     * Whether {@link #check} is scheduled, readable without
+     * {@link #checkLock} by {@link #taskStarted}.
+     */
+    private volatile boolean checkArmed;
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Notifies this watchdog that the current thread is about to run the task
+     * with the given name.
+     *
+     * @param name the name of the task
+     * @param queuedTime the {@link System#nanoTime()} at which the task was
+     * queued
+     */
+    void taskStarted(String name, long queuedTime) {
+        runningTasks.put(
+            Thread.currentThread(),
+            new RunningTask(name, queuedTime, System.nanoTime()));
+
+        // The task is put before checkArmed is read and runCheck clears
+        // checkArmed before it looks for running tasks, so either this sees
+        // the check disarmed or the check sees this task.
+        if (!checkArmed) {
+            synchronized (checkLock) {
+                checkArmed = true;
+                if (check == null) {
+                    check = ThreadUtils.schedule(this::runCheck, CHECK_INTERVAL_MS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Notifies this watchdog that the current thread has finished running the
+     * task it last started.
+     */
+    void taskFinished() {
+        RunningTask task = runningTasks.remove(Thread.currentThread());
+        if (task == null) {
+            return;
+        }
+
+        long waitMs = (task.startTime - task.queuedTime) / 1000000;
+        long runMs = (System.nanoTime() - task.startTime) / 1000000;
+        boolean longTask = runMs >= LONG_TASK_THRESHOLD_MS;
+
+        synchronized (this) {
+            TaskStats taskStats = stats.get(task.name);
+            if (taskStats == null) {
+                taskStats = new TaskStats();
+                stats.put(task.name, taskStats);
+            }
+            taskStats.add(waitMs, runMs, longTask);
+        }
+
+        if (longTask && !task.stalled) {
+            Log.w(TAG, "Long task " + task.name + " ran for " + runMs + "ms");
+
+            WritableMap report = Arguments.createMap();
+            report.putString("name", task.name);
+            report.putDouble("waitTime", waitMs);
+            report.putDouble("runTime", runMs);
+            report.putBoolean("stalled", false);
+            report(report);
+        }
+    }
+
+    private void runCheck() {
+        checkForStalls();
+
+        synchronized (checkLock) {
+            checkArmed = false;
+            if (runningTasks.isEmpty()) {
+                check = null;
+            } else {
+                checkArmed = true;
+                check = ThreadUtils.schedule(this::runCheck, CHECK_INTERVAL_MS);
+            }
+        }
+    }
+
+    private void checkForStalls() {
+        long now = System.nanoTime();
+
+        for (Map.Entry<Thread, RunningTask> e : runningTasks.entrySet()) {
+            RunningTask task = e.getValue();
+            long runMs = (now - task.startTime) / 1000000;
+
+            if (task.stalled || runMs < STALL_THRESHOLD_MS) {
+                continue;
+            }
+            task.stalled = true;
+
+            Thread thread = e.getKey();
+            WritableArray stack = Arguments.createArray();
+            StackTraceElement[] frames = thread.getStackTrace();
+            for (int i = 0; i < frames.length && i < MAX_STACK_FRAMES; i++) {
+                stack.pushString(frames[i].toString());
+            }
+
+            Log.w(TAG,
+                "Task " + task.name + " stalled " + thread.getName()
+                    + " for " + runMs + "ms");
+
+            WritableMap stall = Arguments.createMap();
+            stall.putString("name", task.name);
+            stall.putString("thread", thread.getName());
+            stall.putDouble("waitTime", (task.startTime - task.queuedTime) / 1000000);
+            stall.putDouble("runTime", runMs);
+            stall.putArray("stack", stack);
+
+            synchronized (this) {
+                stalls.offer(stall);
+                if (stalls.size() > MAX_STALLS) {
+                    stalls.poll();
+                }
+            }
+
+            WritableMap report = Arguments.createMap();
+            report.merge(stall);
+            report.putBoolean("stalled", true);
+            report(report);
+        }
+    }
+
+    /**
+     * Delivers a report to the {@link Listener}, at most once per
+     * {@link #REPORT_INTERVAL_MS}.
+     */
+    private void report(WritableMap report) {
+        Listener listener = this.listener;
+        if (listener == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - lastReportTime < REPORT_INTERVAL_MS) {
+                droppedReports++;
+                return;
+            }
+            lastReportTime = now;
+            report.putInt("droppedReports", droppedReports);
+            droppedReports = 0;
+        }
+
+        listener.onReport(report);
+    }
+
+    /**
+     * Gets the statistics recorded so far per task name, the tasks which are
+     * currently running and the most recent stalls.
+     */
+    synchronized WritableMap getSnapshot() {
+        WritableMap tasks = Arguments.createMap();
+        for (Map.Entry<String, TaskStats> e : stats.entrySet()) {
+            tasks.putMap(e.getKey(), e.getValue().toMap());
+        }
+
+        long now = System.nanoTime();
+        WritableArray running = Arguments.createArray();
+        for (Map.Entry<Thread, RunningTask> e : runningTasks.entrySet()) {
+            RunningTask task = e.getValue();
+            WritableMap r = Arguments.createMap();
+            r.putString("name", task.name);
+            r.putString("thread", e.getKey().getName());
+            r.putDouble("runTime", (now - task.startTime) / 1000000);
+            running.pushMap(r);
+        }
+
+        WritableArray recentStalls = Arguments.createArray();
+        for (WritableMap stall : stalls) {
+            recentStalls.pushMap(stall.copy());
+        }
+
+        WritableMap snapshot = Arguments.createMap();
+        snapshot.putMap("tasks", tasks);
+        snapshot.putArray("running", running);
+        snapshot.putArray("stalls", recentStalls);
+        snapshot.putDouble("longTaskThreshold", LONG_TASK_THRESHOLD_MS);
+        snapshot.putDouble("stallThreshold", STALL_THRESHOLD_MS);
+        return snapshot;
+    }
+
+    private static final class RunningTask {
+        final String name;
+        final long queuedTime;
+        final long startTime;
+
+        /**
+         * Whether the task has already been reported as a stall.
+         */
+        volatile boolean stalled;
+
+        RunningTask(String name, long queuedTime, long startTime) {
+            this.name = name;
+            this.queuedTime = queuedTime;
+            this.startTime = startTime;
+        }
+    }
+
+    private static final class TaskStats {
+        int count;
+        int longTasks;
+        long totalWaitMs;
+        long maxWaitMs;
+        long totalRunMs;
+        long maxRunMs;
+
+        void add(long waitMs, long runMs, boolean longTask) {
+            count++;
+            if (longTask) {
+                longTasks++;
+            }
+            totalWaitMs += waitMs;
+            maxWaitMs = Math.max(maxWaitMs, waitMs);
+            totalRunMs += runMs;
+            maxRunMs = Math.max(maxRunMs, runMs);
+        }
+
+        WritableMap toMap() {
+            WritableMap map = Arguments.createMap();
+            map.putInt("count", count);
+            map.putInt("longTasks", longTasks);
+            map.putDouble("totalWaitTime", totalWaitMs);
+            map.putDouble("maxWaitTime", maxWaitMs);
+            map.putDouble("totalRunTime", totalRunMs);
+            map.putDouble("maxRunTime", maxRunMs);
+            return map;
+        }
+    }
+}
@@ -10,9 +10,9 @@ import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.webrtc.*;
 
@@ -26,7 +26,17 @@ class GetUserMediaImpl {
      */
     private static final String TAG = WebRTCModule.TAG;
 
-    private final CameraEnumerator cameraEnumerator;
+    /**
+     * The {@link CameraEnumerator} used to enumerate and open cameras. Created
+     * lazily by {@link #getCameraEnumerator()} because probing for Camera2
+     * support is not needed until video is.
+     */
+    private CameraEnumerator cameraEnumerator;
+
+    /**
+     * Whether {@link #cameraEnumerator} uses the Camera1 API.
+     */
+    private boolean camera1;
     private final ReactApplicationContext reactContext;
 
     /**
@@ -34,31 +44,68 @@ class GetUserMediaImpl {
      * {@link MediaStreamTrack}s created by {@code GetUserMediaImpl} mapped by
      * track ID.
      */
-    private final Map<String, TrackPrivate> tracks = new HashMap<>();
+    private final Map<String, TrackPrivate> tracks = new ConcurrentHashMap<>();
 
     private final WebRTCModule webRTCModule;
 
-    GetUserMediaImpl(WebRTCModule webRTCModule, ReactApplicationContext reactContext) {
+    /**
+     * The cache of the capabilities of the cameras which outlives the app.
+     */
+    private final DeviceCapabilityCache capabilityCache;
+
+    GetUserMediaImpl(
+            WebRTCModule webRTCModule,
+            ReactApplicationContext reactContext,
+            DeviceCapabilityCache capabilityCache) {
         this.webRTCModule = webRTCModule;
         this.reactContext = reactContext;
+        this.capabilityCache = capabilityCache;
+    }
 
+    private synchronized CameraEnumerator getCameraEnumerator() {
+        if (cameraEnumerator != null) {
+            if (camera1) {
+                capabilityCache.validateCamera1Devices();
+            }
+            return cameraEnumerator;
+        }
+
+        Boolean cachedCamera2Supported = capabilityCache.getCamera2Supported();
         boolean camera2supported = false;
 
-        try {
-            camera2supported = Camera2Enumerator.isSupported(reactContext);
-        } catch (Throwable tr) {
-            // Some devices will crash here with: Fatal Exception: java.lang.AssertionError: Supported FPS ranges cannot be null.
-            // Make sure we don't.
-            Log.w(TAG, "Error checking for Camera2 API support.", tr);
+        if (cachedCamera2Supported != null) {
+            camera2supported = cachedCamera2Supported;
+        } else {
+            try {
+                camera2supported = Camera2Enumerator.isSupported(reactContext);
+                capabilityCache.putCamera2Supported(camera2supported);
+            } catch (Throwable tr) {
+                // Some devices will crash here with: Fatal Exception: java.lang.AssertionError: Supported FPS ranges cannot be null.
+                // Make sure we don't.
+                Log.w(TAG, "Error checking for Camera2 API support.", tr);
+            }
         }
 
+        CameraEnumerator enumerator;
+
         if (camera2supported) {
             Log.d(TAG, "Creating video capturer using Camera2 API.");
-            cameraEnumerator = new Camera2Enumerator(reactContext);
+            enumerator = new Camera2Enumerator(reactContext);
+            // The device names of Camera2Enumerator are camera ids so the
+            // availability of cameras tells whether the cache is stale.
+            capabilityCache.watchCameraAvailability();
         } else {
             Log.d(TAG, "Creating video capturer using Camera1 API.");
-            cameraEnumerator = new Camera1Enumerator(false);
+            enumerator = new Camera1Enumerator(false);
+            // Camera1 has no availability callbacks so the number of cameras
+            // is checked whenever they are enumerated.
+            camera1 = true;
+            capabilityCache.validateCamera1Devices();
         }
+
+        cameraEnumerator = new CachingCameraEnumerator(enumerator, capabilityCache);
+
+        return cameraEnumerator;
     }
 
     private AudioTrack createAudioTrack(ReadableMap constraints) {
@@ -83,7 +130,7 @@ class GetUserMediaImpl {
         Log.d(TAG, "getUserMedia(video): " + videoConstraintsMap);
 
         VideoCaptureController videoCaptureController
-            = new VideoCaptureController(cameraEnumerator, videoConstraintsMap);
+            = new VideoCaptureController(getCameraEnumerator(), videoConstraintsMap);
         VideoCapturer videoCapturer = videoCaptureController.getVideoCapturer();
         if (videoCapturer == null) {
             return null;
@@ -115,6 +162,7 @@ class GetUserMediaImpl {
 
     ReadableArray enumerateDevices() {
         WritableArray array = Arguments.createArray();
+        CameraEnumerator cameraEnumerator = getCameraEnumerator();
         String[] devices = cameraEnumerator.getDeviceNames();
 
         for(int i = 0; i < devices.length; ++i) {
@@ -0,0 +1,66 @@
+package com.oney.WebRTCModule;
+
+import org.webrtc.DefaultVideoDecoderFactory;
+import org.webrtc.EglBase;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoDecoder;
+import org.webrtc.VideoDecoderFactory;
+
+/**
+ * A {@link VideoDecoderFactory} which defers the creation of the root EGL
+ * context and of the hardware accelerated decoder factory which uses it until
+ * the first decoder is actually needed. Audio-only sessions never get there.
+ */
+class LazyVideoDecoderFactory implements VideoDecoderFactory {
+    /**
+     * The kind under which the supported codecs are cached.
+     */
+    private static final String CODECS_KIND = "decoder";
+
+    /**
+     * The cache from which the supported codecs are read, if any.
+     */
+    private final DeviceCapabilityCache capabilityCache;
+
+    private VideoDecoderFactory delegate;
+    private VideoCodecInfo[] supportedCodecs;
+
+    LazyVideoDecoderFactory(DeviceCapabilityCache capabilityCache) {
+        this.capabilityCache = capabilityCache;
+    }
+
+    @Override
+    public VideoDecoder createDecoder(VideoCodecInfo info) {
+        return getDelegate().createDecoder(info);
+    }
+
+    @Override
+    public synchronized VideoCodecInfo[] getSupportedCodecs() {
+        // The supported codecs do not depend on the EGL context so they may
+        // be queried without creating one.
+        if (supportedCodecs == null && capabilityCache != null) {
+            supportedCodecs = capabilityCache.getSupportedCodecs(CODECS_KIND);
+        }
+        if (supportedCodecs == null) {
+            VideoDecoderFactory factory = this.delegate;
+
+            if (factory == null) {
+                factory = new DefaultVideoDecoderFactory(/* eglContext */ null);
+            }
+            supportedCodecs = factory.getSupportedCodecs();
+            if (capabilityCache != null) {
+                capabilityCache.putSupportedCodecs(CODECS_KIND, supportedCodecs);
+            }
+        }
+        return supportedCodecs;
+    }
+
+    private synchronized VideoDecoderFactory getDelegate() {
+        if (delegate == null) {
+            EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+
+            delegate = new DefaultVideoDecoderFactory(eglContext);
+        }
+        return delegate;
+    }
+}
@@ -0,0 +1,81 @@
+package com.oney.WebRTCModule;
+
+import org.webrtc.DefaultVideoEncoderFactory;
+import org.webrtc.EglBase;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoEncoderFactory;
+
+/**
+ * A {@link VideoEncoderFactory} which defers the creation of the root EGL
+ * context and of the hardware accelerated encoder factory which uses it until
+ * the first encoder is actually needed. Audio-only sessions never get there.
+ */
+class LazyVideoEncoderFactory implements VideoEncoderFactory {
+    /**
+     * The kind under which the supported codecs are cached.
+     */
+    private static final String CODECS_KIND = "encoder";
+
+    private static final boolean ENABLE_INTEL_VP8_ENCODER = true;
+    private static final boolean ENABLE_H264_HIGH_PROFILE = false;
+
+    /**
+     * The cache from which the supported codecs are read, if any.
+     */
+    private final DeviceCapabilityCache capabilityCache;
+
+    private VideoEncoderFactory delegate;
+    private VideoCodecInfo[] supportedCodecs;
+
+    LazyVideoEncoderFactory(DeviceCapabilityCache capabilityCache) {
+        this.capabilityCache = capabilityCache;
+    }
+
+    @Override
+    public VideoEncoder createEncoder(VideoCodecInfo info) {
+        return getDelegate().createEncoder(info);
+    }
+
+    @Override
+    public synchronized VideoCodecInfo[] getSupportedCodecs() {
+        // The supported codecs do not depend on the EGL context so they may
+        // be queried without creating one. The PeerConnectionFactory does so
+        // as soon as it is created.
+        if (supportedCodecs == null && capabilityCache != null) {
+            supportedCodecs = capabilityCache.getSupportedCodecs(CODECS_KIND);
+        }
+        if (supportedCodecs == null) {
+            VideoEncoderFactory factory = this.delegate;
+
+            if (factory == null) {
+                factory
+                    = new DefaultVideoEncoderFactory(
+                        /* eglContext */ null,
+                        ENABLE_INTEL_VP8_ENCODER,
+                        ENABLE_H264_HIGH_PROFILE);
+            }
+            supportedCodecs = factory.getSupportedCodecs();
+            if (capabilityCache != null) {
+                capabilityCache.putSupportedCodecs(CODECS_KIND, supportedCodecs);
+            }
+        }
+        return supportedCodecs;
+    }
+
+    private synchronized VideoEncoderFactory getDelegate() {
+        if (delegate == null) {
+            // Initialize EGL context required for HW acceleration. If it
+            // cannot be initialized, the hardware encoders fall back to byte
+            // buffers and the factory falls back to software encoders.
+            EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+
+            delegate
+                = new DefaultVideoEncoderFactory(
+                    eglContext,
+                    ENABLE_INTEL_VP8_ENCODER,
+                    ENABLE_H264_HIGH_PROFILE);
+        }
+        return delegate;
+    }
+}
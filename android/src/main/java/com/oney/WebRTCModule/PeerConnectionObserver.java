@@ -1,14 +1,12 @@
 package com.oney.WebRTCModule;
 
-import java.io.UnsupportedEncodingException;
-import java.lang.ref.SoftReference;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 
 import androidx.annotation.Nullable;
 import android.util.Base64;
@@ -16,7 +14,8 @@ import android.util.Log;
 import android.util.SparseArray;
 
 import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
@@ -27,16 +26,41 @@ import org.webrtc.IceCandidate;
 import org.webrtc.MediaStream;
 import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
+import org.webrtc.RTCStatsCollectorCallback;
 import org.webrtc.RtpReceiver;
-import org.webrtc.StatsObserver;
-import org.webrtc.StatsReport;
 import org.webrtc.VideoTrack;
 
 class PeerConnectionObserver implements PeerConnection.Observer {
     private final static String TAG = WebRTCModule.TAG;
 
-    private final SparseArray<DataChannel> dataChannels
-        = new SparseArray<DataChannel>();
+    /**
+     * The observers of the <tt>DataChannel</tt>s of this
+     * <tt>PeerConnection</tt> mapped by <tt>DataChannel</tt> id. Guarded by
+     * itself because it is read from the threads of the bridge too.
+     */
+    private final SparseArray<DataChannelObserver> dataChannels
+        = new SparseArray<>();
+
+    /**
+     * The scheduler of the messages sent on the <tt>DataChannel</tt>s of this
+     * <tt>PeerConnection</tt> or {@code null} if they are handed to the
+     * <tt>DataChannel</tt>s directly. Created when first configured and
+     * guarded by {@link #dataChannels}.
+     */
+    private DataChannelSendScheduler sendScheduler;
+
+    /**
+     * Whether {@link #close()} has started disposing of the
+     * <tt>DataChannel</tt>s. Guarded by {@link #dataChannels}.
+     */
+    private boolean dataChannelsClosed;
+
+    /**
+     * Whether {@link #close()} is about to dispose of the
+     * <tt>PeerConnection</tt>. Guarded by {@link #disposeLock}.
+     */
+    private boolean disposed;
+    private final Object disposeLock = new Object();
     private final int id;
     private PeerConnection peerConnection;
     final List<MediaStream> localStreams;
@@ -46,20 +70,54 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     private final WebRTCModule webRTCModule;
 
     /**
-     * The <tt>StringBuilder</tt> cache utilized by {@link #statsToJSON} in
-     * order to minimize the number of allocations of <tt>StringBuilder</tt>
-     * instances and, more importantly, the allocations of its <tt>char</tt>
-     * buffer in an attempt to improve performance.
+     * The sampler which pushes the stats of this <tt>PeerConnection</tt> to
+     * JS, if any. Only accessed on the executor of this
+     * <tt>PeerConnection</tt>.
+     */
+    private StatsSampler statsSampler;
+
+    /**
+     * The recorder of the stats history of this <tt>PeerConnection</tt>, if
+     * any. Only accessed on the executor of this <tt>PeerConnection</tt>.
+     */
+    private StatsHistory statsHistory;
+
+    /**
+     * The interval in milliseconds over which local ICE candidates are
+     * buffered and then emitted together. If 0, each candidate is emitted on
+     * its own as soon as it's gathered.
+     */
+    private int iceCandidateCoalescingWindow;
+
+    /**
+     * The local ICE candidates gathered but not emitted yet. Also the lock
+     * which guards the coalescing state.
+     */
+    private final List<IceCandidate> pendingIceCandidates = new ArrayList<>();
+
+    /**
+     * Whether a candidate has been emitted since gathering (re)started. The
+     * first candidate is never delayed so that connectivity checks on the
+     * remote side can start right away.
      */
-    private SoftReference<StringBuilder> statsToJSONStringBuilder
-        = new SoftReference<>(null);
+    private boolean iceCandidateEmitted;
+
+    private ScheduledFuture<?> iceCandidateFlush;
+
+    /**
+     * The current ICE gathering state and the one last emitted to JS, which
+     * lags behind while JS does not observe the changes. Guarded by
+     * {@link #pendingIceCandidates}.
+     */
+    private String iceGatheringState;
+    private String emittedIceGatheringState;
 
     PeerConnectionObserver(WebRTCModule webRTCModule, int id) {
         this.webRTCModule = webRTCModule;
         this.id = id;
         this.localStreams = new ArrayList<MediaStream>();
-        this.remoteStreams = new HashMap<String, MediaStream>();
-        this.remoteTracks = new HashMap<String, MediaStreamTrack>();
+        this.remoteStreams = new ConcurrentHashMap<String, MediaStream>();
+        this.remoteTracks = new ConcurrentHashMap<String, MediaStreamTrack>();
         this.videoTrackAdapters = new VideoTrackAdapter(webRTCModule, id);
     }
 
@@ -108,12 +166,68 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         this.peerConnection = peerConnection;
     }
 
+    /**
+     * Sets the interval over which local ICE candidates are to be coalesced
+     * into a single <tt>peerConnectionGotICECandidates</tt> event.
+     *
+     * Candidates which are pending when coalescing gets disabled are emitted
+     * right away; with a different window they are emitted when the current
+     * one ends.
+     *
+     * @param window the interval in milliseconds; 0 to disable coalescing
+     */
+    void setIceCandidateCoalescingWindow(int window) {
+        synchronized (pendingIceCandidates) {
+            iceCandidateCoalescingWindow = window;
+            if (window == 0) {
+                if (iceCandidateFlush != null) {
+                    iceCandidateFlush.cancel(false);
+                    iceCandidateFlush = null;
+                }
+                flushIceCandidates();
+            }
+        }
+    }
+
     void close() {
         Log.d(TAG, "PeerConnection.close() for " + id);
 
+        stopStatsSampling();
+        // Stop recording but keep the history for WebRTCModule to hand out
+        // after the PeerConnection is gone.
+        if (statsHistory != null) {
+            statsHistory.stop();
+        }
+
+        synchronized (pendingIceCandidates) {
+            if (iceCandidateFlush != null) {
+                iceCandidateFlush.cancel(false);
+                iceCandidateFlush = null;
+            }
+            pendingIceCandidates.clear();
+        }
+
+        synchronized (dataChannels) {
+            dataChannelsClosed = true;
+        }
+
         // Close the PeerConnection first to stop any events.
         peerConnection.close();
 
+        // Dispose of the DataChannels before the PeerConnection which owns
+        // them. Not while holding the lock which their callbacks take.
+        List<DataChannelObserver> dataChannelObservers = new ArrayList<>();
+        synchronized (dataChannels) {
+            for (int i = 0, size = dataChannels.size(); i < size; i++) {
+                dataChannelObservers.add(dataChannels.valueAt(i));
+            }
+            dataChannels.clear();
+            sendScheduler = null;
+        }
+        for (DataChannelObserver observer : dataChannelObservers) {
+            observer.release();
+        }
+
         // PeerConnection.dispose() calls MediaStream.dispose() on all local
         // MediaStreams added to it and the app may crash if a local MediaStream
         // is added to multiple PeerConnections. In order to reduce the risks of
@@ -130,6 +244,12 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             }
         }
 
+        // Stop requestStats() from calling into the PeerConnection from
+        // other threads before it is freed.
+        synchronized (disposeLock) {
+            disposed = true;
+        }
+
         // At this point there should be no local MediaStreams in the associated
         // PeerConnection. Call dispose() to free all remaining resources held
         // by the PeerConnection instance (RtpReceivers, RtpSenders, etc.)
@@ -137,10 +257,6 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
         remoteStreams.clear();
         remoteTracks.clear();
-
-        // Unlike on iOS, we cannot unregister the DataChannel.Observer
-        // instance on Android. At least do whatever else we do on iOS.
-        dataChannels.clear();
     }
 
     void createDataChannel(String label, ReadableMap config) {
@@ -166,134 +282,391 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             }
         }
         DataChannel dataChannel = peerConnection.createDataChannel(label, init);
+        if (dataChannel == null) {
+            Log.d(TAG, "createDataChannel() failed");
+            return;
+        }
         int dataChannelId = init.id;
-        if (-1 != dataChannelId) {
-            dataChannels.put(dataChannelId, dataChannel);
-            registerDataChannelObserver(dataChannelId, dataChannel);
+        if (-1 == dataChannelId) {
+            // JS cannot refer to the DataChannel so it would only leak.
+            Log.d(TAG, "createDataChannel() dataChannel has no id");
+            dataChannel.close();
+            dataChannel.dispose();
+        } else {
+            DataChannelObserver observer
+                = registerDataChannelObserver(dataChannelId, dataChannel);
+            if (DataChannelCompression.isNegotiated(init.protocol)
+                    || DataChannelCompression.isNegotiated(label)) {
+                observer.setCompression(
+                    new DataChannelCompression(
+                        DataChannelCompression.DEFAULT_THRESHOLD));
+            }
+        }
+    }
+
+    @Nullable
+    DataChannelObserver getDataChannelObserver(int dataChannelId) {
+        synchronized (dataChannels) {
+            return dataChannels.get(dataChannelId);
         }
     }
 
+    @Nullable
+    private DataChannel getDataChannel(int dataChannelId) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        return observer == null ? null : observer.getDataChannel();
+    }
+
+    /**
+     * Closes a <tt>DataChannel</tt>. It is disposed of once it reaches the
+     * <tt>closed</tt> state, see {@link #releaseDataChannel}.
+     */
     void dataChannelClose(int dataChannelId) {
-        DataChannel dataChannel = dataChannels.get(dataChannelId);
+        DataChannel dataChannel = getDataChannel(dataChannelId);
         if (dataChannel != null) {
             dataChannel.close();
-            dataChannels.remove(dataChannelId);
         } else {
             Log.d(TAG, "dataChannelClose() dataChannel is null");
         }
     }
 
-    void dataChannelSend(int dataChannelId, String data, String type) {
-        DataChannel dataChannel = dataChannels.get(dataChannelId);
-        if (dataChannel != null) {
-            byte[] byteArray;
-            if (type.equals("text")) {
-                try {
-                    byteArray = data.getBytes("UTF-8");
-                } catch (UnsupportedEncodingException e) {
-                    Log.d(TAG, "Could not encode text string as UTF-8.");
-                    return;
-                }
-            } else if (type.equals("binary")) {
-                byteArray = Base64.decode(data, Base64.NO_WRAP);
-            } else {
-                Log.e(TAG, "Unsupported data type: " + type);
+    /**
+     * Forgets a <tt>DataChannel</tt> which has reached the <tt>closed</tt>
+     * state, whether it was closed locally or remotely, and disposes of it on
+     * the executor of this <tt>PeerConnection</tt>.
+     *
+     * @param dataChannelId the id of the <tt>DataChannel</tt>
+     * @param observer the observer of the <tt>DataChannel</tt>; a new
+     * <tt>DataChannel</tt> may have reused the id by the time the disposal
+     * runs
+     */
+    void releaseDataChannel(int dataChannelId, DataChannelObserver observer) {
+        synchronized (dataChannels) {
+            // The DataChannels are disposed of by close() and the executor
+            // is about to be released.
+            if (dataChannelsClosed) {
                 return;
             }
-            ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray);
-            DataChannel.Buffer buffer = new DataChannel.Buffer(byteBuffer, type.equals("binary"));
-            dataChannel.send(buffer);
+            ThreadUtils.runOnPeerConnectionExecutor(
+                id,
+                "dataChannelRelease",
+                WebRTCModule.dataChannelOrderingKey(dataChannelId),
+                () -> {
+                    synchronized (dataChannels) {
+                        if (dataChannels.get(dataChannelId) == observer) {
+                            dataChannels.remove(dataChannelId);
+                            if (sendScheduler != null) {
+                                sendScheduler.remove(dataChannelId);
+                            }
+                        }
+                    }
+                    observer.release();
+                });
+        }
+    }
+
+    /**
+     * Sets the priority and the weight with which the messages sent on a
+     * <tt>DataChannel</tt> are scheduled against the ones of the other
+     * <tt>DataChannel</tt>s of this <tt>PeerConnection</tt>.
+     */
+    void dataChannelSetSendPriority(int dataChannelId, int priority, int weight) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        if (observer == null) {
+            Log.d(TAG, "dataChannelSetSendPriority() dataChannel is null");
+            return;
+        }
+        getSendScheduler().setPriority(
+            dataChannelId,
+            observer,
+            priority,
+            weight);
+    }
+
+    /**
+     * Sets the total buffered amount of the <tt>DataChannel</tt>s of this
+     * <tt>PeerConnection</tt> above which the send scheduler holds messages
+     * back.
+     */
+    void setDataChannelSendBudget(long budget) {
+        getSendScheduler().setBudget(budget);
+    }
+
+    /**
+     * Gets the send scheduler of this <tt>PeerConnection</tt>, creating it
+     * and routing the messages of all <tt>DataChannel</tt>s through it if
+     * there is none yet.
+     */
+    private DataChannelSendScheduler getSendScheduler() {
+        synchronized (dataChannels) {
+            if (sendScheduler == null) {
+                sendScheduler = new DataChannelSendScheduler(id);
+                for (int i = 0, size = dataChannels.size(); i < size; i++) {
+                    dataChannels.valueAt(i).setSendScheduler(sendScheduler);
+                }
+            }
+            return sendScheduler;
+        }
+    }
+
+    void dataChannelSend(int dataChannelId, String data, String type) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        if (observer != null) {
+            String error = dataChannelSend(observer, data, type);
+            if (error != null) {
+                Log.e(TAG, "dataChannelSend() " + error);
+            }
+            observer.reportBufferedAmount(error != null);
         } else {
             Log.d(TAG, "dataChannelSend() dataChannel is null");
         }
     }
 
-    @SuppressWarnings("deprecation") // TODO(saghul): getStats is deprecated.
-    void getStats(String trackId, final Callback cb) {
-        MediaStreamTrack track = null;
-        if (trackId == null
-                || trackId.isEmpty()
-                || (track = webRTCModule.getLocalTrack(trackId)) != null
-                || (track = remoteTracks.get(trackId)) != null) {
-            peerConnection.getStats(
-                reports -> cb.invoke(true, statsToJSON(reports)),
-                    track);
-        } else {
-            Log.e(TAG, "peerConnectionGetStats() MediaStreamTrack not found for id: " + trackId);
-            cb.invoke(false, "Track not found");
+    /**
+     * Sends the given messages on the <tt>DataChannel</tt> with the given id,
+     * in order.
+     *
+     * @param dataChannelId the id of the <tt>DataChannel</tt>
+     * @param messages the messages to send, each a map with <tt>data</tt> and
+     * <tt>type</tt> like the arguments of {@link #dataChannelSend}
+     * @return an array with an element per message which is {@code null} if
+     * the message was sent or the reason why it was not
+     */
+    WritableArray dataChannelSendMany(int dataChannelId, ReadableArray messages) {
+        DataChannelObserver observer = getDataChannelObserver(dataChannelId);
+        WritableArray results = Arguments.createArray();
+        final int size = messages.size();
+
+        boolean failed = false;
+
+        if (observer == null) {
+            Log.d(TAG, "dataChannelSendMany() dataChannel is null");
+        }
+        for (int i = 0; i < size; i++) {
+            String error;
+            if (observer == null) {
+                error = "DataChannel not found";
+            } else {
+                ReadableMap message = messages.getMap(i);
+                error
+                    = dataChannelSend(
+                        observer,
+                        message.getString("data"),
+                        message.getString("type"));
+            }
+            if (error == null) {
+                results.pushNull();
+            } else {
+                results.pushString(error);
+                failed = true;
+            }
+        }
+        if (observer != null) {
+            // Before the results so that JS has stopped counting the failed
+            // messages by then.
+            observer.reportBufferedAmount(failed);
         }
+        return results;
     }
 
     /**
-     * Constructs a JSON <tt>String</tt> representation of a specific array of
-     * <tt>StatsReport</tt>s (produced by {@link PeerConnection#getStats}).
-     * <p>
-     * On Android it is faster to (1) construct a single JSON <tt>String</tt>
-     * representation of an array of <tt>StatsReport</tt>s and (2) have it pass
-     * through the React Native bridge rather than the array of
-     * <tt>StatsReport</tt>s.
+     * Sends a message on the <tt>DataChannel</tt> of the given observer,
+     * compressing it if compression is enabled on the <tt>DataChannel</tt>.
      *
-     * @param reports the array of <tt>StatsReport</tt>s to represent in JSON
-     * format
-     * @return a <tt>String</tt> which represents the specified <tt>reports</tt>
-     * in JSON format
+     * @param observer
+     * @param data the text or the Base64-encoded binary data to send
+     * @param type <tt>text</tt> or <tt>binary</tt>
+     * @return {@code null} if the message was sent or the reason why it was
+     * not
      */
-    private String statsToJSON(StatsReport[] reports) {
-        // If possible, reuse a single StringBuilder instance across multiple
-        // getStats method calls in order to reduce the total number of
-        // allocations.
-        StringBuilder s = statsToJSONStringBuilder.get();
-        if (s == null) {
-            s = new StringBuilder();
-            statsToJSONStringBuilder = new SoftReference(s);
-        }
-
-        s.append('[');
-        final int reportCount = reports.length;
-        for (int i = 0; i < reportCount; ++i) {
-            StatsReport report = reports[i];
-            if (i != 0) {
-                s.append(',');
+    @Nullable
+    private static String dataChannelSend(
+            DataChannelObserver observer,
+            String data,
+            String type) {
+        byte[] byteArray;
+        boolean binary;
+        if (type.equals("text")) {
+            byteArray = data.getBytes(Utf8Decoder.UTF_8);
+            binary = false;
+        } else if (type.equals("binary")) {
+            try {
+                byteArray = Base64.decode(data, Base64.NO_WRAP);
+            } catch (IllegalArgumentException e) {
+                // JS has counted the length of the payload it encoded.
+                int padding
+                    = data.endsWith("==") ? 2 : data.endsWith("=") ? 1 : 0;
+                observer.onSendProcessed(data.length() / 4 * 3 - padding);
+                return "Invalid Base64 data";
             }
-            s.append("{\"id\":\"").append(report.id)
-                .append("\",\"type\":\"").append(report.type)
-                .append("\",\"timestamp\":").append(report.timestamp)
-                .append(",\"values\":[");
-            StatsReport.Value[] values = report.values;
-            final int valueCount = values.length;
-            for (int j = 0; j < valueCount; ++j) {
-                StatsReport.Value v = values[j];
-                if (j != 0) {
-                    s.append(',');
-                }
-                s.append("{\"").append(v.name).append("\":\"").append(v.value)
-                    .append("\"}");
+            binary = true;
+        } else {
+            return "Unsupported data type: " + type;
+        }
+        DataChannel.Buffer buffer
+            = observer.encodeMessage(byteArray, 0, byteArray.length, binary);
+        boolean sent = observer.send(buffer);
+        observer.onSendProcessed(byteArray.length);
+        if (!sent) {
+            return "DataChannel is not open or its buffer is full";
+        }
+        return null;
+    }
+
+    /**
+     * Gets the standard stats of the associated <tt>PeerConnection</tt> and
+     * resolves the given {@code Promise} with their JSON representation (see
+     * {@link StatsJsonWriter#toJSON}).
+     *
+     * @param filter the stats and members to include or {@code null} for all
+     */
+    void getStats(@Nullable StatsFilter filter, Promise promise) {
+        peerConnection.getStats(
+            report -> promise.resolve(StatsJsonWriter.toJSON(report, filter)));
+    }
+
+    /**
+     * Requests the stats of the associated <tt>PeerConnection</tt>. Unlike
+     * the other methods, may be called on any thread because
+     * {@code PeerConnection.getStats} is thread-safe and {@link #close()}
+     * does not dispose of the <tt>PeerConnection</tt> meanwhile.
+     *
+     * @return {@code false} if the <tt>PeerConnection</tt> has been closed,
+     * in which case the callback is not called
+     */
+    boolean requestStats(RTCStatsCollectorCallback callback) {
+        synchronized (disposeLock) {
+            if (disposed || peerConnection == null) {
+                return false;
             }
-            s.append("]}");
+            peerConnection.getStats(callback);
+            return true;
+        }
+    }
+
+    /**
+     * Starts emitting the stats of the associated <tt>PeerConnection</tt>
+     * which changed since the previous sample, every given interval, in place
+     * of any sampling started before.
+     *
+     * @param interval the sampling interval in milliseconds
+     * @param filter the stats, members and derived rates to emit or
+     * {@code null} for all of them
+     */
+    void startStatsSampling(int interval, @Nullable StatsFilter filter) {
+        stopStatsSampling();
+        statsSampler
+            = new StatsSampler(webRTCModule, id, peerConnection, interval, filter);
+        statsSampler.start();
+    }
+
+    void stopStatsSampling() {
+        if (statsSampler != null) {
+            statsSampler.stop();
+            statsSampler = null;
+        }
+    }
+
+    /**
+     * Starts recording the stats of the associated <tt>PeerConnection</tt>,
+     * discarding any history recorded before.
+     *
+     * @param interval the sampling interval in milliseconds
+     * @param capacity the number of samples to keep
+     * @param filter the stats and members to record or {@code null} for all
+     */
+    void startStatsHistory(
+            int interval,
+            int capacity,
+            @Nullable StatsFilter filter) {
+        stopStatsHistory();
+        statsHistory
+            = new StatsHistory(id, peerConnection, interval, capacity, filter);
+        statsHistory.start();
+    }
+
+    void stopStatsHistory() {
+        if (statsHistory != null) {
+            statsHistory.stop();
+            statsHistory = null;
         }
-        s.append("]");
+    }
 
-        String r = s.toString();
-        // Prepare the StringBuilder instance for reuse (in order to reduce the
-        // total number of allocations performed during multiple getStats method
-        // calls).
-        s.setLength(0);
+    @Nullable
+    StatsHistory getStatsHistory() {
+        return statsHistory;
+    }
 
-        return r;
+    /**
+     * Enables or disables a remote track of the associated
+     * <tt>PeerConnection</tt>. Runs on its executor so that {@link #close()}
+     * does not dispose of the track meanwhile.
+     */
+    void setRemoteTrackEnabled(String trackId, boolean enabled) {
+        MediaStreamTrack track = remoteTracks.get(trackId);
+        if (track != null && track.enabled() != enabled) {
+            track.setEnabled(enabled);
+        }
     }
 
     @Override
     public void onIceCandidate(final IceCandidate candidate) {
+        synchronized (pendingIceCandidates) {
+            if (iceCandidateCoalescingWindow > 0) {
+                pendingIceCandidates.add(candidate);
+                if (!iceCandidateEmitted) {
+                    iceCandidateEmitted = true;
+                    flushIceCandidates();
+                } else if (iceCandidateFlush == null) {
+                    iceCandidateFlush = ThreadUtils.schedule(() -> {
+                        synchronized (pendingIceCandidates) {
+                            iceCandidateFlush = null;
+                            flushIceCandidates();
+                        }
+                    }, iceCandidateCoalescingWindow);
+                }
+                return;
+            }
+        }
+
         Log.d(TAG, "onIceCandidate");
         WritableMap params = Arguments.createMap();
         params.putInt("id", id);
+        params.putMap("candidate", iceCandidateToMap(candidate));
+
+        webRTCModule.sendEvent("peerConnectionGotICECandidate", params);
+    }
+
+    /**
+     * Emits the pending local ICE candidates in a single
+     * <tt>peerConnectionGotICECandidates</tt> event. Must be called with the
+     * lock of {@link #pendingIceCandidates} held so that batches are emitted
+     * in order.
+     */
+    private void flushIceCandidates() {
+        if (pendingIceCandidates.isEmpty()) {
+            return;
+        }
+
+        WritableArray candidates = Arguments.createArray();
+        for (IceCandidate candidate : pendingIceCandidates) {
+            candidates.pushMap(iceCandidateToMap(candidate));
+        }
+        pendingIceCandidates.clear();
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("id", id);
+        params.putArray("candidates", candidates);
+
+        webRTCModule.sendEvent("peerConnectionGotICECandidates", params);
+    }
+
+    private static WritableMap iceCandidateToMap(IceCandidate candidate) {
         WritableMap candidateParams = Arguments.createMap();
         candidateParams.putInt("sdpMLineIndex", candidate.sdpMLineIndex);
         candidateParams.putString("sdpMid", candidate.sdpMid);
         candidateParams.putString("candidate", candidate.sdp);
-        params.putMap("candidate", candidateParams);
-
-        webRTCModule.sendEvent("peerConnectionGotICECandidate", params);
+        return candidateParams;
     }
 
     @Override
@@ -326,10 +699,44 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     @Override
     public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
         Log.d(TAG, "onIceGatheringChange" + iceGatheringState.name());
-        WritableMap params = Arguments.createMap();
-        params.putInt("id", id);
-        params.putString("iceGatheringState", iceGatheringStateString(iceGatheringState));
-        webRTCModule.sendEvent("peerConnectionIceGatheringChanged", params);
+        synchronized (pendingIceCandidates) {
+            if (iceGatheringState == PeerConnection.IceGatheringState.GATHERING) {
+                iceCandidateEmitted = false;
+            } else if (iceGatheringState == PeerConnection.IceGatheringState.COMPLETE) {
+                // The candidates have to reach JS before the end-of-candidates
+                // indication which accompanies the gathering state change.
+                if (iceCandidateFlush != null) {
+                    iceCandidateFlush.cancel(false);
+                    iceCandidateFlush = null;
+                }
+                flushIceCandidates();
+            }
+            this.iceGatheringState = iceGatheringStateString(iceGatheringState);
+            emitIceGatheringState();
+        }
+    }
+
+    /**
+     * Emits the current ICE gathering state unless JS has been told about it
+     * already or does not observe it. Called again once JS starts observing
+     * it so that it catches up.
+     */
+    void emitIceGatheringState() {
+        synchronized (pendingIceCandidates) {
+            if (iceGatheringState == null
+                    || iceGatheringState.equals(emittedIceGatheringState)
+                    || !webRTCModule.hasListeners(
+                        "peerConnectionIceGatheringChanged",
+                        String.valueOf(id))) {
+                return;
+            }
+            emittedIceGatheringState = iceGatheringState;
+
+            WritableMap params = Arguments.createMap();
+            params.putInt("id", id);
+            params.putString("iceGatheringState", iceGatheringState);
+            webRTCModule.sendEvent("peerConnectionIceGatheringChanged", params);
+        }
     }
 
     private String getReactTagForStream(MediaStream mediaStream) {
@@ -439,7 +846,11 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     public void onDataChannel(DataChannel dataChannel) {
         final int dataChannelId = dataChannel.id();
         if (-1 == dataChannelId) {
-          return;
+            // JS cannot refer to the DataChannel so it would only leak.
+            Log.d(TAG, "onDataChannel() dataChannel has no id");
+            dataChannel.close();
+            dataChannel.dispose();
+            return;
         }
 
         WritableMap dataChannelParams = Arguments.createMap();
@@ -449,18 +860,34 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         params.putInt("id", id);
         params.putMap("dataChannel", dataChannelParams);
 
-        dataChannels.put(dataChannelId, dataChannel);
-        registerDataChannelObserver(dataChannelId, dataChannel);
+        DataChannelObserver observer
+            = registerDataChannelObserver(dataChannelId, dataChannel);
+        // The protocol of the DataChannel is not available here, only its
+        // label.
+        if (DataChannelCompression.isNegotiated(dataChannel.label())) {
+            observer.setCompression(
+                new DataChannelCompression(
+                    DataChannelCompression.DEFAULT_THRESHOLD));
+        }
 
         webRTCModule.sendEvent("peerConnectionDidOpenDataChannel", params);
     }
 
-    private void registerDataChannelObserver(int dcId, DataChannel dataChannel) {
-        // DataChannel.registerObserver implementation does not allow to
-        // unregister, so the observer is registered here and is never
-        // unregistered
-        dataChannel.registerObserver(
-            new DataChannelObserver(webRTCModule, id, dcId, dataChannel));
+    private DataChannelObserver registerDataChannelObserver(
+            int dcId,
+            DataChannel dataChannel) {
+        // The observer is unregistered and the DataChannel is disposed of
+        // once the DataChannel is closed, see releaseDataChannel.
+        DataChannelObserver observer
+            = new DataChannelObserver(webRTCModule, id, dcId, dataChannel);
+        DataChannelMetrics.recordChannelCreated();
+
+        synchronized (dataChannels) {
+            dataChannels.put(dcId, observer);
+            observer.setSendScheduler(sendScheduler);
+        }
+        dataChannel.registerObserver(observer);
+        return observer;
     }
 
     @Override
@@ -0,0 +1,113 @@
+package com.oney.WebRTCModule;
+
+import java.util.concurrent.ScheduledFuture;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStatsReport;
+
+/**
+ * Gets the stats of a <tt>PeerConnection</tt> periodically, on its executor,
+ * and hands them to {@link #onStatsDelivered}. A period is skipped rather than
+ * piling up requests if libwebrtc has not delivered the previous stats yet,
+ * so the deliveries never overlap.
+ */
+abstract class PeriodicStatsCollector {
+    /**
+     * The minimum interval in milliseconds.
+     */
+    static final int MIN_INTERVAL = 100;
+
+    protected final int peerConnectionId;
+    private final PeerConnection peerConnection;
+    private final int interval;
+
+    /**
+     * The name of the tasks on the executor of the <tt>PeerConnection</tt>.
+     */
+    private final String name;
+
+    /**
+     * The next period. Guarded by this instance.
+     */
+    private ScheduledFuture<?> future;
+
+    /**
+     * Whether stats have been requested and not delivered yet. Guarded by
+     * this instance.
+     */
+    private boolean collecting;
+
+    /**
+     * Guarded by this instance.
+     */
+    private boolean stopped;
+
+    PeriodicStatsCollector(
+            String name,
+            int peerConnectionId,
+            PeerConnection peerConnection,
+            int interval) {
+        this.name = name;
+        this.peerConnectionId = peerConnectionId;
+        this.peerConnection = peerConnection;
+        this.interval = Math.max(MIN_INTERVAL, interval);
+    }
+
+    /**
+     * Starts collecting, right away.
+     */
+    synchronized void start() {
+        future = ThreadUtils.schedule(this::tick, 0);
+    }
+
+    /**
+     * Stops collecting. Must run on the executor of the
+     * <tt>PeerConnection</tt> so that no stats are being requested.
+     */
+    synchronized void stop() {
+        stopped = true;
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    private synchronized void tick() {
+        if (stopped) {
+            return;
+        }
+        future = ThreadUtils.schedule(this::tick, interval);
+
+        if (collecting) {
+            return;
+        }
+        collecting = true;
+        ThreadUtils.runOnPeerConnectionExecutor(
+            peerConnectionId,
+            name,
+            "stats",
+            this::collect);
+    }
+
+    private void collect() {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+        }
+        peerConnection.getStats(report -> {
+            synchronized (this) {
+                collecting = false;
+                if (stopped) {
+                    return;
+                }
+            }
+            onStatsDelivered(report);
+        });
+    }
+
+    /**
+     * Handles the stats of a period. Invoked on a libwebrtc thread.
+     */
+    abstract void onStatsDelivered(RTCStatsReport report);
+}
@@ -0,0 +1,137 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Promise;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.webrtc.RTCStatsReport;
+
+/**
+ * Gets the stats of many <tt>PeerConnection</tt>s at once and resolves a
+ * single {@link Promise} with them merged into one report. The stats of all
+ * the <tt>PeerConnection</tt>s are requested one right after the other from
+ * the same thread, rather than queued on their executors behind whatever
+ * they are doing, so that they are taken at about the same time.
+ */
+final class StatsAggregator {
+    /**
+     * The {@link Log} tag with which {@code StatsAggregator} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The time after which the report is resolved without the stats of the
+     * <tt>PeerConnection</tt>s which have not delivered them yet.
+     */
+    private static final long TIMEOUT_MS = 5000;
+
+    private final SparseArray<PeerConnectionObserver> peerConnectionObservers;
+    private final AtomicReferenceArray<RTCStatsReport> reports;
+    private final AtomicInteger pending;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    @Nullable
+    private final StatsFilter filter;
+    private final Promise promise;
+
+    /**
+     * Guarded by this instance.
+     */
+    private ScheduledFuture<?> timeout;
+
+    /**
+     * @param peerConnectionObservers the <tt>PeerConnectionObserver</tt>s of
+     * the <tt>PeerConnection</tt>s mapped by id
+     * @param filter the stats and members to include or {@code null} for all
+     */
+    StatsAggregator(
+            SparseArray<PeerConnectionObserver> peerConnectionObservers,
+            @Nullable StatsFilter filter,
+            Promise promise) {
+        this.peerConnectionObservers = peerConnectionObservers;
+        this.filter = filter;
+        this.promise = promise;
+        int size = peerConnectionObservers.size();
+        reports = new AtomicReferenceArray<>(size);
+        pending = new AtomicInteger(size);
+    }
+
+    void start() {
+        int size = peerConnectionObservers.size();
+        if (size == 0) {
+            finish();
+            return;
+        }
+
+        synchronized (this) {
+            timeout = ThreadUtils.schedule(this::finish, TIMEOUT_MS);
+        }
+        for (int i = 0; i < size; i++) {
+            final int index = i;
+            if (!peerConnectionObservers.valueAt(i).requestStats(
+                    report -> deliver(index, report))) {
+                // Closed since.
+                deliver(index, null);
+            }
+        }
+    }
+
+    private void deliver(int index, @Nullable RTCStatsReport report) {
+        reports.set(index, report);
+        if (pending.decrementAndGet() == 0) {
+            synchronized (this) {
+                if (timeout != null) {
+                    timeout.cancel(false);
+                }
+            }
+            // Serialize off the thread of libwebrtc which delivered the last
+            // report.
+            ThreadUtils.runOnExecutor("getStatsForPeerConnections", this::finish);
+        }
+    }
+
+    /**
+     * Resolves the {@code Promise} with the reports delivered so far, as a
+     * JSON array of <tt>[key, stats]</tt> pairs where the key is the id of the
+     * <tt>PeerConnection</tt> and the id of the stats joined with a
+     * <tt>/</tt> and the stats carry the id of their <tt>PeerConnection</tt>
+     * as <tt>peerConnectionId</tt>.
+     */
+    private void finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        if (pending.get() > 0) {
+            Log.w(TAG, "getStatsForPeerConnections() timed out waiting for "
+                + pending.get() + " report(s)");
+        }
+
+        StatsJsonWriter writer = StatsJsonWriter.get();
+        try {
+            writer.append('[');
+            boolean first = true;
+            for (int i = 0; i < peerConnectionObservers.size(); i++) {
+                RTCStatsReport report = reports.get(i);
+                if (report != null
+                        && writer.writeTaggedReport(
+                            peerConnectionObservers.keyAt(i),
+                            report.getStatsMap().values(),
+                            filter,
+                            first)) {
+                    first = false;
+                }
+            }
+            writer.append(']');
+            promise.resolve(writer.finish());
+        } finally {
+            writer.reset();
+        }
+    }
+}
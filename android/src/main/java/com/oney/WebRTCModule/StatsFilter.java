@@ -0,0 +1,119 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.webrtc.RTCStats;
+
+/**
+ * Selects the stats which are serialized and sent to JS so that the ones
+ * which are not consumed are not encoded at all. Stats are selected by type
+ * and, for RTP stats, by SSRC; their members by name. The <tt>id</tt>,
+ * <tt>type</tt> and <tt>timestamp</tt> of the selected stats are always
+ * included.
+ */
+final class StatsFilter {
+    /**
+     * The types of the stats to include or {@code null} for all.
+     */
+    @Nullable
+    private final Set<String> types;
+
+    /**
+     * The names of the members to include or {@code null} for all.
+     */
+    @Nullable
+    private final Set<String> fields;
+
+    /**
+     * The SSRCs of the RTP stats to include or {@code null} for all. Stats
+     * without an SSRC are not affected.
+     */
+    @Nullable
+    private final Set<Long> ssrcs;
+
+    private StatsFilter(
+            @Nullable Set<String> types,
+            @Nullable Set<String> fields,
+            @Nullable Set<Long> ssrcs) {
+        this.types = types;
+        this.fields = fields;
+        this.ssrcs = ssrcs;
+    }
+
+    /**
+     * Creates a filter from its JS representation, a map with optional
+     * <tt>types</tt>, <tt>fields</tt> and <tt>ssrcs</tt> arrays.
+     *
+     * @return the filter or {@code null} if it would include everything
+     */
+    @Nullable
+    static StatsFilter fromMap(@Nullable ReadableMap map) {
+        if (map == null) {
+            return null;
+        }
+
+        Set<String> types = getStrings(map, "types");
+        Set<String> fields = getStrings(map, "fields");
+        Set<Long> ssrcs = null;
+        if (map.hasKey("ssrcs") && !map.isNull("ssrcs")) {
+            ReadableArray array = map.getArray("ssrcs");
+            ssrcs = new HashSet<>();
+            for (int i = 0; i < array.size(); i++) {
+                ssrcs.add((long) array.getDouble(i));
+            }
+        }
+
+        if (types == null && fields == null && ssrcs == null) {
+            return null;
+        }
+        return new StatsFilter(types, fields, ssrcs);
+    }
+
+    /**
+     * Gets an optional array of strings of a JS map as a set.
+     */
+    @Nullable
+    static Set<String> getStrings(ReadableMap map, String key) {
+        if (!map.hasKey(key) || map.isNull(key)) {
+            return null;
+        }
+
+        ReadableArray array = map.getArray(key);
+        Set<String> strings = new HashSet<>();
+        for (int i = 0; i < array.size(); i++) {
+            strings.add(array.getString(i));
+        }
+        return strings;
+    }
+
+    /**
+     * Determines whether the given stats are to be included.
+     */
+    boolean accepts(RTCStats stats) {
+        if (types != null && !types.contains(stats.getType())) {
+            return false;
+        }
+        if (ssrcs != null) {
+            Object ssrc = stats.getMembers().get("ssrc");
+            if (ssrc instanceof Number
+                    && !ssrcs.contains(((Number) ssrc).longValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether the member (or derived value) with the given name is
+     * to be included.
+     */
+    boolean acceptsField(String name) {
+        return fields == null || fields.contains(name);
+    }
+}
@@ -0,0 +1,293 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+/**
+ * Records the numeric stats of a <tt>PeerConnection</tt> periodically into
+ * a ring buffer of the last {@link #capacity} samples which JS queries on
+ * demand, e.g. for diagnostics at the end of a call, so that recording costs
+ * nothing on the bridge. Each metric (a numeric member of the stats with a
+ * given id) is a {@code double[]} aligned with the ring of timestamps, with
+ * {@code NaN} where the metric was missing. The number of metrics is capped
+ * so that the recorded samples stay within {@link #MAX_SAMPLES}, whatever
+ * the capacity.
+ */
+final class StatsHistory extends PeriodicStatsCollector {
+    static final int DEFAULT_CAPACITY = 300;
+    static final int MAX_CAPACITY = 3600;
+
+    /**
+     * The maximum number of metrics recorded. Metrics which appear once it
+     * (or the budget of {@link #MAX_SAMPLES}) has been reached are ignored.
+     */
+    static final int MAX_METRICS = 1024;
+
+    /**
+     * The maximum number of values recorded over all metrics, i.e. 4MB of
+     * {@code double}s: 1024 metrics of 512 samples or 145 of 3600.
+     */
+    static final int MAX_SAMPLES = 512 * 1024;
+
+    private final int capacity;
+
+    /**
+     * The maximum number of metrics recorded with {@link #capacity}.
+     */
+    private final int maxMetrics;
+
+    /**
+     * The stats and members to record or {@code null} for all.
+     */
+    @Nullable
+    private final StatsFilter filter;
+
+    /**
+     * The timestamps of the samples in milliseconds. Guarded by this
+     * instance, like the rest of the ring.
+     */
+    private final double[] timestamps;
+    private int head;
+    private int size;
+
+    /**
+     * The values of the metrics mapped by stats id and member name.
+     */
+    private final Map<String, Map<String, double[]>> metrics
+        = new LinkedHashMap<>();
+    private final Map<String, String> types = new HashMap<>();
+    private int metricCount;
+
+    StatsHistory(
+            int peerConnectionId,
+            PeerConnection peerConnection,
+            int interval,
+            int capacity,
+            @Nullable StatsFilter filter) {
+        super(
+            "peerConnectionStatsHistory",
+            peerConnectionId,
+            peerConnection,
+            interval);
+        this.capacity
+            = capacity <= 0 ? DEFAULT_CAPACITY : Math.min(capacity, MAX_CAPACITY);
+        this.filter = filter;
+        maxMetrics = Math.min(MAX_METRICS, MAX_SAMPLES / this.capacity);
+        timestamps = new double[this.capacity];
+    }
+
+    @Override
+    void onStatsDelivered(RTCStatsReport report) {
+        synchronized (this) {
+            int index;
+            if (size < capacity) {
+                index = (head + size) % capacity;
+                size++;
+            } else {
+                index = head;
+                head = (head + 1) % capacity;
+            }
+            timestamps[index] = report.getTimestampUs() / 1000;
+            for (Map<String, double[]> members : metrics.values()) {
+                for (double[] values : members.values()) {
+                    values[index] = Double.NaN;
+                }
+            }
+
+            for (RTCStats stats : report.getStatsMap().values()) {
+                if (filter == null || filter.accepts(stats)) {
+                    record(stats, index);
+                }
+            }
+
+            // Once per pass over the ring, forget the metrics of stats which
+            // have been gone for all of it.
+            if (index == capacity - 1) {
+                prune();
+            }
+        }
+    }
+
+    private void prune() {
+        Iterator<Map.Entry<String, Map<String, double[]>>> i
+            = metrics.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<String, Map<String, double[]>> stats = i.next();
+            Iterator<double[]> j = stats.getValue().values().iterator();
+            while (j.hasNext()) {
+                if (isEmpty(j.next())) {
+                    j.remove();
+                    metricCount--;
+                }
+            }
+            if (stats.getValue().isEmpty()) {
+                types.remove(stats.getKey());
+                i.remove();
+            }
+        }
+    }
+
+    private static boolean isEmpty(double[] values) {
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void record(RTCStats stats, int index) {
+        Map<String, double[]> members = metrics.get(stats.getId());
+
+        for (Map.Entry<String, Object> member : stats.getMembers().entrySet()) {
+            Object value = member.getValue();
+            String name = member.getKey();
+            if (!(value instanceof Number)
+                    || (filter != null && !filter.acceptsField(name))) {
+                continue;
+            }
+
+            double[] values = members == null ? null : members.get(name);
+            if (values == null) {
+                if (metricCount >= maxMetrics) {
+                    continue;
+                }
+                if (members == null) {
+                    members = new LinkedHashMap<>();
+                    metrics.put(stats.getId(), members);
+                    types.put(stats.getId(), stats.getType());
+                }
+                values = new double[capacity];
+                Arrays.fill(values, Double.NaN);
+                members.put(name, values);
+                metricCount++;
+            }
+            values[index] = ((Number) value).doubleValue();
+        }
+    }
+
+    /**
+     * Writes the recorded samples as JSON: <tt>timestamps</tt>, an array of
+     * the timestamps of the samples in milliseconds, and <tt>stats</tt>, an
+     * object which maps stats ids to their <tt>type</tt> and an array of
+     * values (or {@code null}s) per metric, aligned with
+     * <tt>timestamps</tt>.
+     *
+     * @param query optional <tt>from</tt> and <tt>to</tt> timestamps in
+     * milliseconds, inclusive, and <tt>ids</tt>, <tt>types</tt> and
+     * <tt>metrics</tt> arrays which select the stats ids, stats types and
+     * member names to include; everything if {@code null}
+     */
+    synchronized String toJSON(@Nullable ReadableMap query) {
+        double from = Double.NEGATIVE_INFINITY;
+        double to = Double.POSITIVE_INFINITY;
+        Set<String> ids = null;
+        Set<String> queryTypes = null;
+        Set<String> names = null;
+        if (query != null) {
+            if (query.hasKey("from") && !query.isNull("from")) {
+                from = query.getDouble("from");
+            }
+            if (query.hasKey("to") && !query.isNull("to")) {
+                to = query.getDouble("to");
+            }
+            ids = StatsFilter.getStrings(query, "ids");
+            queryTypes = StatsFilter.getStrings(query, "types");
+            names = StatsFilter.getStrings(query, "metrics");
+        }
+
+        // The samples are in chronological order so the range is contiguous.
+        int start = 0;
+        while (start < size && timestamps[(head + start) % capacity] < from) {
+            start++;
+        }
+        int end = start;
+        while (end < size && timestamps[(head + end) % capacity] <= to) {
+            end++;
+        }
+
+        StatsJsonWriter writer = StatsJsonWriter.get();
+        try {
+            writer.append('{');
+            writer.writeString("timestamps");
+            writer.append(':');
+            writeValues(writer, timestamps, start, end);
+            writer.append(',');
+            writer.writeString("stats");
+            writer.append(':').append('{');
+
+            boolean firstStats = true;
+            for (Map.Entry<String, Map<String, double[]>> stats
+                    : metrics.entrySet()) {
+                String id = stats.getKey();
+                String type = types.get(id);
+                if ((ids != null && !ids.contains(id))
+                        || (queryTypes != null && !queryTypes.contains(type))) {
+                    continue;
+                }
+
+                boolean started = false;
+                for (Map.Entry<String, double[]> metric
+                        : stats.getValue().entrySet()) {
+                    if (names != null && !names.contains(metric.getKey())) {
+                        continue;
+                    }
+                    if (!started) {
+                        if (!firstStats) {
+                            writer.append(',');
+                        }
+                        firstStats = false;
+                        started = true;
+                        writer.writeString(id);
+                        writer.append(':').append('{');
+                        writer.writeString("type");
+                        writer.append(':');
+                        writer.writeString(type);
+                    }
+                    writer.append(',');
+                    writer.writeString(metric.getKey());
+                    writer.append(':');
+                    writeValues(writer, metric.getValue(), start, end);
+                }
+                if (started) {
+                    writer.append('}');
+                }
+            }
+
+            writer.append('}').append('}');
+            return writer.finish();
+        } finally {
+            writer.reset();
+        }
+    }
+
+    /**
+     * Writes the values of the samples in the given range as an array.
+     */
+    private void writeValues(
+            StatsJsonWriter writer,
+            double[] values,
+            int start,
+            int end) {
+        writer.append('[');
+        for (int i = start; i < end; i++) {
+            if (i != start) {
+                writer.append(',');
+            }
+            writer.writeNumber(values[(head + i) % capacity]);
+        }
+        writer.append(']');
+    }
+}
@@ -0,0 +1,308 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+/**
+ * Writes <tt>RTCStats</tt> as JSON straight into a {@link StringBuilder}
+ * without intermediate maps or strings. Numbers and booleans are written as
+ * such rather than as strings and strings are escaped. On Android it is
+ * faster to pass a single JSON string through the React Native bridge than
+ * the equivalent {@code WritableMap}s.
+ * <p>
+ * Instances are not thread-safe. {@link #get()} hands out one per thread,
+ * which is reused by the calls on that thread, so that the buffer is neither
+ * reallocated per report nor shared by overlapping callbacks.
+ */
+final class StatsJsonWriter {
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+
+    /**
+     * The maximum capacity of the buffer which is kept between reports.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 512 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Doubles of a smaller magnitude which have no fractional part are
+     * written as integers, the way JS would write them.
+     */
+    private static final double MAX_INTEGRAL_DOUBLE = 1e15;
+
+    private static final ThreadLocal<StatsJsonWriter> writers
+        = new ThreadLocal<StatsJsonWriter>() {
+            @Override
+            protected StatsJsonWriter initialValue() {
+                return new StatsJsonWriter();
+            }
+        };
+
+    private StringBuilder out = new StringBuilder(INITIAL_CAPACITY);
+
+    private StatsJsonWriter() {
+    }
+
+    /**
+     * Gets the writer of the current thread. It is empty unless a report is
+     * being written on this thread already.
+     */
+    static StatsJsonWriter get() {
+        return writers.get();
+    }
+
+    /**
+     * Writes the given report as an array of <tt>[id, stats]</tt> pairs which
+     * JS turns into a {@code Map}.
+     *
+     * @param filter the stats and members to write or {@code null} for all
+     */
+    static String toJSON(RTCStatsReport report, @Nullable StatsFilter filter) {
+        StatsJsonWriter writer = get();
+        try {
+            writer.writeReport(report.getStatsMap().values(), filter);
+            return writer.finish();
+        } finally {
+            writer.reset();
+        }
+    }
+
+    /**
+     * Writes the given stats as an array of <tt>[id, stats]</tt> pairs.
+     *
+     * @param filter the stats and members to write or {@code null} for all
+     */
+    void writeReport(Collection<RTCStats> report, @Nullable StatsFilter filter) {
+        out.append('[');
+        boolean first = true;
+        for (RTCStats stats : report) {
+            if (filter != null && !filter.accepts(stats)) {
+                continue;
+            }
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append('[');
+            writeString(stats.getId());
+            out.append(',');
+            writeStats(stats, filter);
+            out.append(']');
+        }
+        out.append(']');
+    }
+
+    /**
+     * Writes the given stats of one of many <tt>PeerConnection</tt>s as
+     * <tt>[id, stats]</tt> pairs, into an array of pairs being written. The
+     * ids are prefixed with the id of the <tt>PeerConnection</tt> and a
+     * <tt>/</tt> and the stats carry it as <tt>peerConnectionId</tt>.
+     *
+     * @param filter the stats and members to write or {@code null} for all
+     * @param first whether nothing has been written into the array of pairs
+     * yet
+     * @return whether anything was written
+     */
+    boolean writeTaggedReport(
+            int peerConnectionId,
+            Collection<RTCStats> report,
+            @Nullable StatsFilter filter,
+            boolean first) {
+        boolean written = false;
+        for (RTCStats stats : report) {
+            if (filter != null && !filter.accepts(stats)) {
+                continue;
+            }
+            if (!first || written) {
+                out.append(',');
+            }
+            written = true;
+            out.append("[\"").append(peerConnectionId).append('/');
+            // The quote of the id is replaced by the prefix.
+            int start = out.length();
+            writeString(stats.getId());
+            out.deleteCharAt(start);
+            out.append(',');
+            writeStats(stats, filter, peerConnectionId);
+            out.append(']');
+        }
+        return written;
+    }
+
+    /**
+     * Writes the given stats as an object with their <tt>id</tt>,
+     * <tt>type</tt>, <tt>timestamp</tt> (in milliseconds) and members.
+     *
+     * @param filter the members to write or {@code null} for all
+     */
+    void writeStats(RTCStats stats, @Nullable StatsFilter filter) {
+        writeStats(stats, filter, -1);
+    }
+
+    /**
+     * @param peerConnectionId the id of the <tt>PeerConnection</tt> to write
+     * as <tt>peerConnectionId</tt> or -1 for none
+     */
+    private void writeStats(
+            RTCStats stats,
+            @Nullable StatsFilter filter,
+            int peerConnectionId) {
+        out.append("{\"id\":");
+        writeString(stats.getId());
+        out.append(",\"type\":");
+        writeString(stats.getType());
+        out.append(",\"timestamp\":");
+        writeNumber(stats.getTimestampUs() / 1000);
+        if (peerConnectionId != -1) {
+            out.append(",\"peerConnectionId\":").append(peerConnectionId);
+        }
+        for (Map.Entry<String, Object> member : stats.getMembers().entrySet()) {
+            if (filter != null && !filter.acceptsField(member.getKey())) {
+                continue;
+            }
+            out.append(',');
+            writeString(member.getKey());
+            out.append(':');
+            writeValue(member.getValue());
+        }
+        out.append('}');
+    }
+
+    /**
+     * Writes a member of <tt>RTCStats</tt>: a boolean, a number, a string or
+     * an array or a map of those.
+     */
+    void writeValue(Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            writeString((String) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            writeNumber(((Number) value).doubleValue());
+        } else if (value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte) {
+            out.append(((Number) value).longValue());
+        } else if (value instanceof BigInteger || value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            out.append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i != 0) {
+                    out.append(',');
+                }
+                writeValue(array[i]);
+            }
+            out.append(']');
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(String.valueOf(entry.getKey()));
+                out.append(':');
+                writeValue(entry.getValue());
+            }
+            out.append('}');
+        } else {
+            writeString(value.toString());
+        }
+    }
+
+    /**
+     * Writes a number; {@code null} if it is not finite because JSON cannot
+     * represent it.
+     */
+    void writeNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append("null");
+        } else if (value == Math.rint(value)
+                && Math.abs(value) < MAX_INTEGRAL_DOUBLE) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+    }
+
+    /**
+     * Writes a quoted and escaped string.
+     */
+    void writeString(String value) {
+        out.append('"');
+        final int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\'
+                    && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            out.append(value, start, i);
+            start = i + 1;
+            switch (c) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                out.append("\\u")
+                    .append(HEX_DIGITS[(c >> 12) & 0xf])
+                    .append(HEX_DIGITS[(c >> 8) & 0xf])
+                    .append(HEX_DIGITS[(c >> 4) & 0xf])
+                    .append(HEX_DIGITS[c & 0xf]);
+                break;
+            }
+        }
+        out.append(value, start, length);
+        out.append('"');
+    }
+
+    /**
+     * Appends a structural character such as a bracket or a comma.
+     */
+    StatsJsonWriter append(char c) {
+        out.append(c);
+        return this;
+    }
+
+    /**
+     * Gets what has been written so far.
+     */
+    String finish() {
+        return out.toString();
+    }
+
+    /**
+     * Empties this writer for the next report, dropping its buffer if it has
+     * grown too large to keep around.
+     */
+    void reset() {
+        if (out.capacity() > MAX_RETAINED_CAPACITY) {
+            out = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            out.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.oney.WebRTCModule;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+/**
+ * Samples the stats of a <tt>PeerConnection</tt> periodically and emits only
+ * what changed since the previous sample, along with rates derived from the
+ * counters, in <tt>peerConnectionStatsSample</tt> events. JS merges the
+ * samples into a full report so that unchanged values do not cross the
+ * bridge again and again.
+ */
+final class StatsSampler extends PeriodicStatsCollector {
+    /**
+     * The counters from which rates per second are derived: the name of the
+     * counter, the name of the rate and the factor applied to the rate.
+     */
+    private static final Object[][] RATES = {
+        { "bytesSent", "sendBitrate", 8 },
+        { "bytesReceived", "receiveBitrate", 8 },
+        { "packetsLost", "packetsLostPerSecond", 1 },
+        { "framesEncoded", "framesEncodedPerSecond", 1 },
+        { "framesDecoded", "framesDecodedPerSecond", 1 },
+    };
+
+    private final WebRTCModule webRTCModule;
+
+    /**
+     * The stats, members and rates to emit or {@code null} for all.
+     */
+    @Nullable
+    private final StatsFilter filter;
+
+    /**
+     * The stats of the previous sample mapped by id. Only accessed by
+     * {@link #onStatsDelivered}, which does not overlap itself.
+     */
+    private Map<String, RTCStats> previous = Collections.emptyMap();
+
+    StatsSampler(
+            WebRTCModule webRTCModule,
+            int peerConnectionId,
+            PeerConnection peerConnection,
+            int interval,
+            @Nullable StatsFilter filter) {
+        super(
+            "peerConnectionStatsSample",
+            peerConnectionId,
+            peerConnection,
+            interval);
+        this.webRTCModule = webRTCModule;
+        this.filter = filter;
+    }
+
+    /**
+     * Emits what changed since the previous sample, the first sample being a
+     * full report.
+     */
+    @Override
+    void onStatsDelivered(RTCStatsReport report) {
+        Map<String, RTCStats> current = report.getStatsMap();
+        Map<String, RTCStats> previous = this.previous;
+        this.previous = current;
+
+        WritableArray removed = Arguments.createArray();
+        boolean changed = false;
+        for (Map.Entry<String, RTCStats> entry : previous.entrySet()) {
+            String id = entry.getKey();
+            if (!current.containsKey(id)
+                    && (filter == null || filter.accepts(entry.getValue()))) {
+                removed.pushString(id);
+                changed = true;
+            }
+        }
+
+        StatsJsonWriter writer = StatsJsonWriter.get();
+        String stats;
+        try {
+            writer.append('[');
+            boolean first = true;
+            for (RTCStats s : current.values()) {
+                if (filter != null && !filter.accepts(s)) {
+                    continue;
+                }
+                if (writeDelta(writer, s, previous.get(s.getId()), first)) {
+                    first = false;
+                }
+            }
+            writer.append(']');
+            changed |= !first;
+            stats = writer.finish();
+        } finally {
+            writer.reset();
+        }
+        if (!changed) {
+            return;
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("id", peerConnectionId);
+        params.putString("stats", stats);
+        params.putArray("removed", removed);
+        webRTCModule.sendEvent("peerConnectionStatsSample", params);
+    }
+
+    /**
+     * Writes the members of the given stats which changed since the previous
+     * sample and the rates derived from them, as an <tt>[id, stats]</tt>
+     * pair. New stats also carry their <tt>id</tt> and <tt>type</tt>.
+     *
+     * @param old the stats with the same id in the previous sample, if any
+     * @param first whether nothing has been written into the array of pairs
+     * yet
+     * @return whether anything was written
+     */
+    private boolean writeDelta(
+            StatsJsonWriter writer,
+            RTCStats stats,
+            @Nullable RTCStats old,
+            boolean first) {
+        Map<String, Object> members = stats.getMembers();
+        Map<String, Object> oldMembers = old == null ? null : old.getMembers();
+        boolean started = false;
+
+        for (Map.Entry<String, Object> member : members.entrySet()) {
+            String name = member.getKey();
+            Object value = member.getValue();
+            if ((filter != null && !filter.acceptsField(name))
+                    || (oldMembers != null
+                        && valueEquals(value, oldMembers.get(name)))) {
+                continue;
+            }
+            started = writeMember(writer, stats, old, first, started, name);
+            writer.writeValue(value);
+        }
+
+        if (oldMembers != null) {
+            double elapsed
+                = (stats.getTimestampUs() - old.getTimestampUs()) / 1000000;
+            for (int i = 0; elapsed > 0 && i < RATES.length; i++) {
+                String rate = (String) RATES[i][1];
+                Object value = members.get(RATES[i][0]);
+                Object oldValue = oldMembers.get(RATES[i][0]);
+                if ((filter != null && !filter.acceptsField(rate))
+                        || !(value instanceof Number)
+                        || !(oldValue instanceof Number)) {
+                    continue;
+                }
+                double delta
+                    = ((Number) value).doubleValue()
+                        - ((Number) oldValue).doubleValue();
+                started = writeMember(writer, stats, old, first, started, rate);
+                writer.writeNumber(delta * (Integer) RATES[i][2] / elapsed);
+            }
+        }
+
+        if (started) {
+            writer.append('}').append(']');
+        }
+        return started;
+    }
+
+    /**
+     * Writes the name of a member, preceded by the id and the timestamp of
+     * the stats if it is their first member.
+     */
+    private static boolean writeMember(
+            StatsJsonWriter writer,
+            RTCStats stats,
+            @Nullable RTCStats old,
+            boolean first,
+            boolean started,
+            String name) {
+        if (!started) {
+            if (!first) {
+                writer.append(',');
+            }
+            writer.append('[');
+            writer.writeString(stats.getId());
+            writer.append(',').append('{');
+            if (old == null) {
+                writer.writeString("id");
+                writer.append(':');
+                writer.writeString(stats.getId());
+                writer.append(',');
+                writer.writeString("type");
+                writer.append(':');
+                writer.writeString(stats.getType());
+                writer.append(',');
+            }
+            writer.writeString("timestamp");
+            writer.append(':');
+            writer.writeNumber(stats.getTimestampUs() / 1000);
+        }
+        writer.append(',');
+        writer.writeString(name);
+        writer.append(':');
+        return true;
+    }
+
+    private static boolean valueEquals(Object a, Object b) {
+        if (a instanceof Object[] && b instanceof Object[]) {
+            return Arrays.deepEquals((Object[]) a, (Object[]) b);
+        }
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -1,22 +1,354 @@
 package com.oney.WebRTCModule;
 
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 final class ThreadUtils {
     /**
-     * Thread which will be used to call all WebRTC PeerConnection APIs. They
-     * they don't run on the calling thread anyway, we are deferring the calls
+     * The {@link Log} tag with which {@code ThreadUtils} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Thread which will be used to call all module-wide WebRTC APIs (the
+     * factory, getUserMedia, local MediaStreams and their tracks). They
+     * don't run on the calling thread anyway, we are deferring the calls
      * to this thread to avoid (potentially) blocking the calling thread.
      */
-    private static final ExecutorService executor
-        = Executors.newSingleThreadExecutor();
+    private static final SerialExecutor executor
+        = new SerialExecutor(
+            Executors.newSingleThreadExecutor(
+                new NamedThreadFactory("WebRTCModule")));
+
+    /**
+     * Pool of threads which back the per-<tt>PeerConnection</tt> serial
+     * executors. Sized after the number of cores so that independent
+     * <tt>PeerConnection</tt>s can make progress in parallel.
+     */
+    private static final ExecutorService peerConnectionPool
+        = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            new NamedThreadFactory("WebRTCModule-pc"));
+
+    /**
+     * The serial executors which call the WebRTC APIs of a specific
+     * <tt>PeerConnection</tt> (and its <tt>DataChannel</tt>s) mapped by
+     * <tt>PeerConnection</tt> id. Created by
+     * {@link #createPeerConnectionExecutor} and removed by
+     * {@link #releasePeerConnectionExecutor}.
+     */
+    private static final SparseArray<SerialExecutor> peerConnectionExecutors
+        = new SparseArray<>();
+
+    /**
+     * Pool of threads which take work which does not call WebRTC APIs (such
+     * as the decoding of received messages) off the threads of libwebrtc.
+     */
+    private static final ExecutorService workerPool
+        = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            new NamedThreadFactory("WebRTCModule-worker"));
+
+    /**
+     * Thread which runs short, delayed runnables such as the flushing of
+     * buffered events. Runnables which call WebRTC APIs do not belong here.
+     */
+    private static final ScheduledExecutorService scheduler
+        = Executors.newSingleThreadScheduledExecutor(
+            new NamedThreadFactory("WebRTCModule-scheduler"));
+
+    /**
+     * Watches over the runnables of all executors.
+     */
+    private static final ExecutorWatchdog watchdog = new ExecutorWatchdog();
+
+    static ExecutorWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the executor after all previously
+     * submitted runnables.
+     *
+     * @param name the name of the task, used by the {@link ExecutorWatchdog}
+     * @param runnable
+     */
+    public static void runOnExecutor(String name, Runnable runnable) {
+        executor.execute(name, null, false, runnable);
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the executor after all previously
+     * submitted runnables. Only runnables with the same ordering key (or none)
+     * are guaranteed to be ordered after it.
+     *
+     * @param name the name of the task, used by the {@link ExecutorWatchdog}
+     * @param orderingKey the identifier of the object the runnable operates on
+     * @param runnable
+     */
+    public static void runOnExecutor(
+            String name,
+            String orderingKey,
+            Runnable runnable) {
+        executor.execute(name, orderingKey, false, runnable);
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the executor ahead of queued
+     * non-urgent runnables unless one of them has the same ordering key (or
+     * none), in which case submission order is preserved.
+     *
+     * @param name the name of the task, used by the {@link ExecutorWatchdog}
+     * @param orderingKey the identifier of the object the runnable operates on
+     * @param runnable
+     */
+    public static void runUrgentlyOnExecutor(
+            String name,
+            String orderingKey,
+            Runnable runnable) {
+        executor.execute(name, orderingKey, true, runnable);
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the executor of the
+     * <tt>PeerConnection</tt> with the given id. Runnables submitted for the
+     * same <tt>PeerConnection</tt> run in submission order; runnables
+     * submitted for different <tt>PeerConnection</tt>s may run concurrently.
+     *
+     * @param peerConnectionId the id of the <tt>PeerConnection</tt>
+     * @param name the name of the task, used by the {@link ExecutorWatchdog}
+     * @param runnable
+     * @return {@code false} if the <tt>PeerConnection</tt> has no executor, in
+     * which case the runnable is dropped
+     */
+    public static boolean runOnPeerConnectionExecutor(
+            int peerConnectionId,
+            String name,
+            Runnable runnable) {
+        return executeOnPeerConnectionExecutor(
+            peerConnectionId, name, null, false, runnable);
+    }
 
     /**
-     * Runs the given {@link Runnable} on the executor.
+     * Like {@link #runOnPeerConnectionExecutor(int, String, Runnable)} but only
+     * runnables with the same ordering key (or none) are guaranteed to be
+     * ordered after it.
+     *
+     * @param peerConnectionId the id of the <tt>PeerConnection</tt>
+     * @param name the name of the task, used by the {@link ExecutorWatchdog}
+     * @param orderingKey the identifier of the object the runnable operates on
      * @param runnable
+     * @return {@code false} if the <tt>PeerConnection</tt> has no executor, in
+     * which case the runnable is dropped
      */
-    public static void runOnExecutor(Runnable runnable) {
-        executor.execute(runnable);
+    public static boolean runOnPeerConnectionExecutor(
+            int peerConnectionId,
+            String name,
+            String orderingKey,
+            Runnable runnable) {
+        return executeOnPeerConnectionExecutor(
+            peerConnectionId, name, orderingKey, false, runnable);
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the executor of the
+     * <tt>PeerConnection</tt> with the given id ahead of its queued non-urgent
+     * runnables unless one of them has the same ordering key (or none), in
+     * which case submission order is preserved.
+     *
+     * @param peerConnectionId the id of the <tt>PeerConnection</tt>
+     * @param name the name of the task, used by the {@link ExecutorWatchdog}
+     * @param orderingKey the identifier of the object the runnable operates on
+     * @param runnable
+     * @return {@code false} if the <tt>PeerConnection</tt> has no executor, in
+     * which case the runnable is dropped
+     */
+    public static boolean runUrgentlyOnPeerConnectionExecutor(
+            int peerConnectionId,
+            String name,
+            String orderingKey,
+            Runnable runnable) {
+        return executeOnPeerConnectionExecutor(
+            peerConnectionId, name, orderingKey, true, runnable);
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the scheduler after the given delay.
+     *
+     * @param runnable
+     * @param delayMs the delay in milliseconds
+     * @return a {@code ScheduledFuture} which may be used to cancel the
+     * runnable
+     */
+    public static ScheduledFuture<?> schedule(Runnable runnable, long delayMs) {
+        return scheduler.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates an {@code Executor} which runs its runnables one at a time, in
+     * submission order, on the worker pool. The runnables must not call
+     * WebRTC APIs.
+     *
+     * @param name the name of the tasks, used by the {@link ExecutorWatchdog}
+     */
+    public static Executor newSerialWorkerExecutor(String name) {
+        SerialExecutor serialExecutor = new SerialExecutor(workerPool);
+        return runnable -> serialExecutor.execute(name, null, false, runnable);
+    }
+
+    private static boolean executeOnPeerConnectionExecutor(
+            int peerConnectionId,
+            String name,
+            String orderingKey,
+            boolean urgent,
+            Runnable runnable) {
+        SerialExecutor serialExecutor;
+        synchronized (peerConnectionExecutors) {
+            serialExecutor = peerConnectionExecutors.get(peerConnectionId);
+        }
+        if (serialExecutor == null) {
+            Log.d(TAG, name + "() dropped: no executor for PeerConnection "
+                + peerConnectionId);
+            return false;
+        }
+        serialExecutor.execute(name, orderingKey, urgent, runnable);
+        return true;
+    }
+
+    /**
+     * Creates the executor of the <tt>PeerConnection</tt> with the given id.
+     * Runnables submitted for a <tt>PeerConnection</tt> before its executor is
+     * created or after it is released are dropped so that calls for unknown
+     * ids do not leave executors behind.
+     *
+     * @param peerConnectionId the id of the <tt>PeerConnection</tt>
+     */
+    public static void createPeerConnectionExecutor(int peerConnectionId) {
+        synchronized (peerConnectionExecutors) {
+            if (peerConnectionExecutors.get(peerConnectionId) == null) {
+                peerConnectionExecutors.put(
+                    peerConnectionId,
+                    new SerialExecutor(peerConnectionPool));
+            }
+        }
+    }
+
+    /**
+     * Forgets the executor of the <tt>PeerConnection</tt> with the given id.
+     * Runnables which are already queued on it still run.
+     *
+     * @param peerConnectionId the id of the <tt>PeerConnection</tt>
+     */
+    public static void releasePeerConnectionExecutor(int peerConnectionId) {
+        synchronized (peerConnectionExecutors) {
+            peerConnectionExecutors.remove(peerConnectionId);
+        }
+    }
+
+    /**
+     * Runs its runnables one at a time on a (shared) backing {@code Executor}.
+     * Urgent runnables overtake queued non-urgent ones as long as that does
+     * not reorder runnables which operate on the same object, as identified
+     * by their ordering keys. A {@code null} ordering key stands for all
+     * objects.
+     */
+    private static final class SerialExecutor {
+        private final Executor backingExecutor;
+        private final ArrayDeque<Task> urgentTasks = new ArrayDeque<>();
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private Task active;
+
+        SerialExecutor(Executor backingExecutor) {
+            this.backingExecutor = backingExecutor;
+        }
+
+        synchronized void execute(
+                String name,
+                String orderingKey,
+                boolean urgent,
+                Runnable runnable) {
+            Task task = new Task(name, orderingKey, runnable);
+
+            if (urgent && orderingKey != null && !isQueued(orderingKey)) {
+                urgentTasks.offer(task);
+            } else {
+                tasks.offer(task);
+            }
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        /**
+         * Determines whether a non-urgent runnable which has to run before
+         * a runnable with the given ordering key is queued.
+         */
+        private boolean isQueued(String orderingKey) {
+            for (Task task : tasks) {
+                String key = task.orderingKey;
+                if (key == null || key.equals(orderingKey)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized void scheduleNext() {
+            active = urgentTasks.poll();
+            if (active == null) {
+                active = tasks.poll();
+            }
+            if (active != null) {
+                backingExecutor.execute(active);
+            }
+        }
+
+        private final class Task implements Runnable {
+            final String name;
+            final String orderingKey;
+            final Runnable runnable;
+            final long queuedTime = System.nanoTime();
+
+            Task(String name, String orderingKey, Runnable runnable) {
+                this.name = name;
+                this.orderingKey = orderingKey;
+                this.runnable = runnable;
+            }
+
+            @Override
+            public void run() {
+                watchdog.taskStarted(name, queuedTime);
+                try {
+                    runnable.run();
+                } finally {
+                    watchdog.taskFinished();
+                    scheduleNext();
+                }
+            }
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, name + "-" + count.incrementAndGet());
+        }
     }
 }
@@ -0,0 +1,56 @@
+package com.oney.WebRTCModule;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes UTF-8 into {@code String}s reusing its {@link CharsetDecoder} and
+ * its output {@link CharBuffer} so that the only allocation per decode is the
+ * resulting {@code String}. Not thread-safe.
+ */
+final class Utf8Decoder {
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The maximum capacity of the output buffer which is kept between
+     * decodes. Larger buffers are allocated for a single decode only.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private final CharsetDecoder decoder
+        = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private CharBuffer chars = CharBuffer.allocate(1024);
+
+    /**
+     * Decodes the remaining bytes of the given buffer, consuming them.
+     */
+    String decode(ByteBuffer bytes) {
+        // UTF-8 never decodes into more chars than bytes.
+        int length = bytes.remaining();
+        CharBuffer out = chars;
+
+        if (out.capacity() < length) {
+            out = CharBuffer.allocate(length);
+            if (length <= MAX_RETAINED_CAPACITY) {
+                chars = out;
+            }
+        }
+
+        out.clear();
+        decoder.reset();
+        decoder.decode(bytes, out, true);
+        decoder.flush(out);
+        out.flip();
+        return out.toString();
+    }
+
+    String decode(byte[] bytes, int offset, int length) {
+        return decode(ByteBuffer.wrap(bytes, offset, length));
+    }
+}
@@ -103,7 +103,11 @@ public class VideoTrackAdapter {
                             return;
                         }
                         boolean isMuted = lastFrameNumber == frameCounter.get();
-                        if (isMuted != mutedState) {
+                        // Until JS observes the track, the change is left
+                        // pending so that it is emitted once JS does.
+                        if (isMuted != mutedState
+                                && webRTCModule.hasListeners(
+                                    "mediaStreamTrackMuteChanged", trackId)) {
                             mutedState = isMuted;
                             emitMuteEvent(isMuted);
                         }
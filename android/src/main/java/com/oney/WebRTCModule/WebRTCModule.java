@@ -14,14 +14,24 @@ import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.module.annotations.ReactModule;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.webrtc.*;
 import org.webrtc.audio.AudioDeviceModule;
@@ -31,20 +41,109 @@ import org.webrtc.audio.JavaAudioDeviceModule;
 public class WebRTCModule extends ReactContextBaseJavaModule {
     static final String TAG = WebRTCModule.class.getCanonicalName();
 
+    /**
+     * The ordering key of the runnables which operate on the signaling state
+     * of a <tt>PeerConnection</tt> (see {@link ThreadUtils}). ICE candidates
+     * may overtake other runnables but not these.
+     */
+    private static final String SIGNALING_ORDERING_KEY = "signaling";
+
     PeerConnectionFactory mFactory;
     private final SparseArray<PeerConnectionObserver> mPeerConnectionObservers;
+
+    /**
+     * The stats histories of closed <tt>PeerConnection</tt>s, kept until they
+     * are queried once or released with
+     * {@link #peerConnectionStopStatsHistory}. Guarded by itself.
+     */
+    private final SparseArray<StatsHistory> closedStatsHistories
+        = new SparseArray<>();
     final Map<String, MediaStream> localStreams;
 
     /**
      * The implementation of {@code getUserMedia} extracted into a separate file
      * in order to reduce complexity and to (somewhat) separate concerns.
      */
-    private GetUserMediaImpl getUserMediaImpl;
+    private volatile GetUserMediaImpl getUserMediaImpl;
+
+    /**
+     * The capabilities of the cameras and video codecs of the device which
+     * are persisted across launches.
+     */
+    private final DeviceCapabilityCache capabilityCache;
+
+    /**
+     * Released once {@link #initAsync} has completed i.e. once
+     * {@link #mFactory} may be used. <tt>PeerConnection</tt>s are initialized
+     * on their own executors so they have to wait for it explicitly.
+     */
+    private final CountDownLatch initialized = new CountDownLatch(1);
+
+    /**
+     * Whether {@link #initAsync} has failed, in which case {@link #mFactory}
+     * and {@link #getUserMediaImpl} are {@code null} for good.
+     */
+    private volatile boolean initFailed;
+
+    /**
+     * The durations in milliseconds of the phases of {@link #initAsync}
+     * mapped by phase name, or {@code null} if it has not completed or has
+     * failed. Guarded by {@link #initializedPromises}.
+     */
+    private WritableMap initTimings;
+    private boolean initCompleted;
+
+    /**
+     * The {@code Promise}s of {@link #whenInitialized} calls made before
+     * {@link #initAsync} completed.
+     */
+    private final List<Promise> initializedPromises = new ArrayList<>();
+
+    /**
+     * Batches the events sent to JS if enabled through
+     * {@link #setEventBatching}.
+     */
+    private final EventBatcher eventBatcher;
+
+    /**
+     * The names of the events which are not sent while JS does not observe
+     * them. They are notifications which JS does not need for its own state,
+     * or whose state catches up once JS observes them. JS reports them
+     * through {@link #setEventObserved}: <tt>executorWatchdogReport</tt> as
+     * a whole and the rest per object, i.e. per <tt>PeerConnection</tt> id,
+     * track id or <tt>PeerConnection</tt> id, <tt>DataChannel</tt> id and
+     * direction of a file transfer joined with <tt>/</tt>. Messages and the
+     * other state changes are always sent.
+     */
+    private static final Set<String> OBSERVABLE_EVENTS
+        = new HashSet<>(Arrays.asList(
+            "dataChannelFileTransferProgress",
+            "executorWatchdogReport",
+            "mediaStreamTrackMuteChanged",
+            "peerConnectionIceGatheringChanged"));
+
+    /**
+     * The observable events which JS observes, by name or by name and object
+     * key joined with <tt>/</tt>. Only consulted once JS has started to
+     * report them through {@link #setEventListenersTracked}; until then all
+     * events are considered observed.
+     */
+    private final Set<String> observedEvents
+        = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile boolean eventListenersTracked;
+
+    /**
+     * The number of events which have not been emitted because they had no
+     * listeners mapped by event name.
+     */
+    private final Map<String, AtomicInteger> skippedEvents
+        = new ConcurrentHashMap<>();
 
     public static class Options {
         private VideoEncoderFactory videoEncoderFactory = null;
         private VideoDecoderFactory videoDecoderFactory = null;
         private AudioDeviceModule audioDeviceModule = null;
+        private boolean lazyVideoInitialization = false;
 
         public Options() {}
 
@@ -59,6 +158,17 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         public void setVideoEncoderFactory(VideoEncoderFactory videoEncoderFactory) {
             this.videoEncoderFactory = videoEncoderFactory;
         }
+
+        /**
+         * Defers the creation of the EGL context and of the hardware
+         * accelerated video codecs until the first video encoder or decoder
+         * is needed (or the first video track or view is created), rather
+         * than creating them during initialization. Recommended for apps
+         * which mostly or only make audio calls.
+         */
+        public void setLazyVideoInitialization(boolean lazyVideoInitialization) {
+            this.lazyVideoInitialization = lazyVideoInitialization;
+        }
     }
 
     public WebRTCModule(ReactApplicationContext reactContext) {
@@ -69,32 +179,126 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         super(reactContext);
 
         mPeerConnectionObservers = new SparseArray<>();
-        localStreams = new HashMap<>();
+        localStreams = new ConcurrentHashMap<>();
+        eventBatcher = new EventBatcher(this::emit);
+        capabilityCache = new DeviceCapabilityCache(reactContext);
 
-        ThreadUtils.runOnExecutor(() -> initAsync(options));
+        ThreadUtils.getWatchdog().setListener(report -> {
+            if (hasListeners("executorWatchdogReport", null)) {
+                sendEvent("executorWatchdogReport", report);
+            }
+        });
+        ThreadUtils.runOnExecutor("initialize", () -> initAsync(options));
     }
 
     /**
      * Invoked asynchronously to initialize this {@code WebRTCModule} instance.
      */
     private void initAsync(Options options) {
+        long startTime = System.nanoTime();
+        WritableMap timings = Arguments.createMap();
+        boolean succeeded = false;
+
+        try {
+            initFactory(options, timings);
+            succeeded = true;
+        } catch (Throwable t) {
+            // E.g. the native library failed to load. Calls which need the
+            // factory fail from now on instead of running into nulls.
+            Log.e(TAG, "Failed to initialize WebRTCModule", t);
+        } finally {
+            initFailed = !succeeded;
+            timings.putDouble("total", elapsedMs(startTime));
+            onInitialized(succeeded ? timings : null);
+            initialized.countDown();
+        }
+    }
+
+    /**
+     * Initializes {@link #mFactory} and {@link #getUserMediaImpl}. The video
+     * codec factories (which may create the EGL context) are created on a
+     * separate thread while the native library is loaded and the audio device
+     * module is created on this one.
+     *
+     * @param options
+     * @param timings the map into which the durations of the phases are to
+     * be put
+     */
+    private void initFactory(Options options, WritableMap timings) {
         ReactApplicationContext reactContext = getReactApplicationContext();
 
+        FutureTask<VideoCodecFactories> videoCodecsTask
+            = new FutureTask<>(() -> createVideoCodecFactories(options, capabilityCache));
+        new Thread(videoCodecsTask, "WebRTCModule-init").start();
+
+        long startTime = System.nanoTime();
         PeerConnectionFactory.initialize(
                 PeerConnectionFactory.InitializationOptions.builder(reactContext)
                         .createInitializationOptions());
+        timings.putDouble("initialize", elapsedMs(startTime));
 
-        AudioDeviceModule adm = null;
+        startTime = System.nanoTime();
+        AudioDeviceModule adm = options == null ? null : options.audioDeviceModule;
+        if (adm == null) {
+            adm = JavaAudioDeviceModule
+                    .builder(reactContext)
+                    .setUseHardwareAcousticEchoCanceler(false)
+                    .setUseHardwareNoiseSuppressor(false)
+                    .createAudioDeviceModule();
+        }
+        timings.putDouble("audioDeviceModule", elapsedMs(startTime));
+
+        VideoCodecFactories videoCodecs;
+        startTime = System.nanoTime();
+        try {
+            videoCodecs = videoCodecsTask.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException
+                ? (RuntimeException) cause
+                : new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        timings.putDouble("videoCodecs", videoCodecs.duration);
+        timings.putDouble("videoCodecsWait", elapsedMs(startTime));
+
+        startTime = System.nanoTime();
+        mFactory
+                = PeerConnectionFactory.builder()
+                .setAudioDeviceModule(adm)
+                .setVideoEncoderFactory(videoCodecs.encoderFactory)
+                .setVideoDecoderFactory(videoCodecs.decoderFactory)
+                .createPeerConnectionFactory();
+        timings.putDouble("peerConnectionFactory", elapsedMs(startTime));
+
+        getUserMediaImpl
+            = new GetUserMediaImpl(this, reactContext, capabilityCache);
+    }
+
+    private static VideoCodecFactories createVideoCodecFactories(
+            Options options,
+            DeviceCapabilityCache capabilityCache) {
+        long startTime = System.nanoTime();
         VideoEncoderFactory encoderFactory = null;
         VideoDecoderFactory decoderFactory = null;
+        boolean lazyVideoInitialization = false;
 
         if (options != null) {
-            adm = options.audioDeviceModule;
             encoderFactory = options.videoEncoderFactory;
             decoderFactory = options.videoDecoderFactory;
+            lazyVideoInitialization = options.lazyVideoInitialization;
         }
 
-        if (encoderFactory == null || decoderFactory == null) {
+        if (lazyVideoInitialization) {
+            if (encoderFactory == null) {
+                encoderFactory = new LazyVideoEncoderFactory(capabilityCache);
+            }
+            if (decoderFactory == null) {
+                decoderFactory = new LazyVideoDecoderFactory(capabilityCache);
+            }
+        } else if (encoderFactory == null || decoderFactory == null) {
             // Initialize EGL context required for HW acceleration.
             EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
 
@@ -111,22 +315,53 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             }
         }
 
-        if (adm == null) {
-            adm = JavaAudioDeviceModule
-                    .builder(reactContext)
-                    .setUseHardwareAcousticEchoCanceler(false)
-                    .setUseHardwareNoiseSuppressor(false)
-                    .createAudioDeviceModule();
+        return new VideoCodecFactories(
+            encoderFactory, decoderFactory, elapsedMs(startTime));
+    }
+
+    private static double elapsedMs(long startTime) {
+        return (System.nanoTime() - startTime) / 1000000.0;
+    }
+
+    /**
+     * Settles the {@code Promise}s of {@link #whenInitialized} and emits the
+     * <tt>webRTCModuleInitialized</tt> event.
+     *
+     * @param timings the durations of the phases of {@link #initAsync} or
+     * {@code null} if it failed
+     */
+    private void onInitialized(@Nullable WritableMap timings) {
+        List<Promise> promises;
+
+        synchronized (initializedPromises) {
+            initTimings = timings;
+            initCompleted = true;
+            promises = new ArrayList<>(initializedPromises);
+            initializedPromises.clear();
         }
 
-        mFactory
-                = PeerConnectionFactory.builder()
-                .setAudioDeviceModule(adm)
-                .setVideoEncoderFactory(encoderFactory)
-                .setVideoDecoderFactory(decoderFactory)
-                .createPeerConnectionFactory();
+        for (Promise promise : promises) {
+            settleInitializedPromise(promise, timings);
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putBoolean("succeeded", timings != null);
+        if (timings != null) {
+            params.putMap("timings", timings.copy());
+        }
+        sendEvent("webRTCModuleInitialized", params);
+    }
 
-        getUserMediaImpl = new GetUserMediaImpl(this, reactContext);
+    private static void settleInitializedPromise(
+            Promise promise,
+            @Nullable WritableMap timings) {
+        if (timings == null) {
+            promise.reject(
+                "E_INITIALIZATION",
+                "Failed to initialize WebRTCModule");
+        } else {
+            promise.resolve(timings.copy());
+        }
     }
 
     @Override
@@ -134,15 +369,95 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return "WebRTCModule";
     }
 
+    /**
+     * Waits for {@link #initAsync} to complete.
+     *
+     * @return {@code false} if it failed or the wait was interrupted, in
+     * which case {@link #mFactory} must not be used
+     */
+    private boolean awaitInitialized() {
+        try {
+            initialized.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !initFailed;
+    }
+
+    PeerConnectionObserver getPeerConnectionObserver(int id) {
+        synchronized (mPeerConnectionObservers) {
+            return mPeerConnectionObservers.get(id);
+        }
+    }
+
+    /**
+     * Gets a snapshot of the <tt>PeerConnectionObserver</tt>s mapped by
+     * <tt>PeerConnection</tt> id. <tt>PeerConnection</tt>s are added and
+     * removed on their own executors so the returned copy is safe to iterate
+     * from any thread.
+     */
+    private SparseArray<PeerConnectionObserver> getPeerConnectionObservers() {
+        synchronized (mPeerConnectionObservers) {
+            return mPeerConnectionObservers.clone();
+        }
+    }
+
+    /**
+     * Gets the ordering key of the runnables which operate on the
+     * <tt>DataChannel</tt> with the given id (see {@link ThreadUtils}).
+     */
+    static String dataChannelOrderingKey(int dataChannelId) {
+        return "dataChannel:" + dataChannelId;
+    }
+
     private PeerConnection getPeerConnection(int id) {
-        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+        PeerConnectionObserver pco = getPeerConnectionObserver(id);
         return (pco == null) ? null : pco.getPeerConnection();
     }
 
+    /**
+     * Determines whether the event with the given name is to be sent for the
+     * object with the given key i.e. whether JS observes it or it is not one
+     * of the {@link #OBSERVABLE_EVENTS}. Callers of the latter check it
+     * before they construct the parameters of an event. Events which are not
+     * sent are counted as skipped.
+     *
+     * @param eventName the name of the event
+     * @param key the key of the object the event is about or {@code null}
+     * for events which are observed as a whole
+     * @return <tt>true</tt> if the event is to be sent; otherwise,
+     * <tt>false</tt>
+     */
+    boolean hasListeners(String eventName, @Nullable String key) {
+        if (!eventListenersTracked
+                || !OBSERVABLE_EVENTS.contains(eventName)
+                || observedEvents.contains(
+                    key == null ? eventName : eventName + "/" + key)) {
+            return true;
+        }
+
+        AtomicInteger count = skippedEvents.get(eventName);
+        if (count == null) {
+            AtomicInteger newCount = new AtomicInteger();
+            count = skippedEvents.putIfAbsent(eventName, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+
+        return false;
+    }
+
     void sendEvent(String eventName, @Nullable WritableMap params) {
+        eventBatcher.send(eventName, params);
+    }
+
+    private void emit(String eventName, @Nullable Object data) {
         getReactApplicationContext()
                 .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit(eventName, params);
+                .emit(eventName, data);
     }
 
     private PeerConnection.IceServer createIceServer(String url) {
@@ -387,32 +702,60 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return conf;
     }
 
+    /**
+     * Parses the library-specific <tt>iceCandidateCoalescingWindow</tt> which
+     * is not part of the native <tt>RTCConfiguration</tt>.
+     *
+     * @return the window in milliseconds; 0 if coalescing is not configured
+     */
+    private static int parseIceCandidateCoalescingWindow(
+            ReadableMap configuration) {
+        return configuration != null
+                    && configuration.hasKey("iceCandidateCoalescingWindow")
+                    && configuration.getType("iceCandidateCoalescingWindow") == ReadableType.Number
+                ? Math.max(0, configuration.getInt("iceCandidateCoalescingWindow"))
+                : 0;
+    }
+
     @ReactMethod
     public void peerConnectionInit(ReadableMap configuration, int id) {
         PeerConnection.RTCConfiguration rtcConfiguration
                 = parseRTCConfiguration(configuration);
+        final int iceCandidateCoalescingWindow
+                = parseIceCandidateCoalescingWindow(configuration);
 
-        ThreadUtils.runOnExecutor(() ->
-                peerConnectionInitAsync(rtcConfiguration, id));
+        ThreadUtils.createPeerConnectionExecutor(id);
+        ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionInit", () ->
+                peerConnectionInitAsync(rtcConfiguration, iceCandidateCoalescingWindow, id));
     }
 
     private void peerConnectionInitAsync(
             PeerConnection.RTCConfiguration configuration,
+            int iceCandidateCoalescingWindow,
             int id) {
+        if (!awaitInitialized()) {
+            Log.e(TAG, "peerConnectionInit() WebRTCModule failed to initialize");
+            return;
+        }
+
         PeerConnectionObserver observer = new PeerConnectionObserver(this, id);
+        observer.setIceCandidateCoalescingWindow(iceCandidateCoalescingWindow);
         PeerConnection peerConnection
                 = mFactory.createPeerConnection(configuration, observer);
 
         observer.setPeerConnection(peerConnection);
-        mPeerConnectionObservers.put(id, observer);
+        synchronized (mPeerConnectionObservers) {
+            mPeerConnectionObservers.put(id, observer);
+        }
     }
 
     MediaStream getStreamForReactTag(String streamReactTag) {
         MediaStream stream = localStreams.get(streamReactTag);
 
         if (stream == null) {
-            for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
-                PeerConnectionObserver pco = mPeerConnectionObservers.valueAt(i);
+            SparseArray<PeerConnectionObserver> pcos = getPeerConnectionObservers();
+            for (int i = 0, size = pcos.size(); i < size; i++) {
+                PeerConnectionObserver pco = pcos.valueAt(i);
                 stream = pco.remoteStreams.get(streamReactTag);
                 if (stream != null) {
                     break;
@@ -427,8 +770,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         MediaStreamTrack track = getLocalTrack(trackId);
 
         if (track == null) {
-            for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
-                PeerConnectionObserver pco = mPeerConnectionObservers.valueAt(i);
+            SparseArray<PeerConnectionObserver> pcos = getPeerConnectionObservers();
+            for (int i = 0, size = pcos.size(); i < size; i++) {
+                PeerConnectionObserver pco = pcos.valueAt(i);
                 track = pco.remoteTracks.get(trackId);
                 if (track != null) {
                     break;
@@ -440,7 +784,8 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     }
 
     MediaStreamTrack getLocalTrack(String trackId) {
-        return getUserMediaImpl.getTrack(trackId);
+        GetUserMediaImpl getUserMediaImpl = this.getUserMediaImpl;
+        return getUserMediaImpl == null ? null : getUserMediaImpl.getTrack(trackId);
     }
 
     private static MediaStreamTrack getLocalTrack(
@@ -486,29 +831,43 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void getUserMedia(ReadableMap constraints,
                              Callback    successCallback,
                              Callback    errorCallback) {
-        ThreadUtils.runOnExecutor(() ->
-                getUserMediaImpl.getUserMedia(constraints, successCallback, errorCallback));
+        // getUserMedia only creates new tracks so it may be overtaken.
+        ThreadUtils.runOnExecutor("getUserMedia", "getUserMedia", () -> {
+            if (initFailed) {
+                errorCallback.invoke("AbortError", "WebRTCModule failed to initialize");
+            } else {
+                getUserMediaImpl.getUserMedia(constraints, successCallback, errorCallback);
+            }
+        });
     }
 
     @ReactMethod
     public void enumerateDevices(Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
-                callback.invoke(getUserMediaImpl.enumerateDevices()));
+        ThreadUtils.runOnExecutor("enumerateDevices", "enumerateDevices", () ->
+                callback.invoke(
+                    initFailed
+                        ? Arguments.createArray()
+                        : getUserMediaImpl.enumerateDevices()));
     }
 
     @ReactMethod
     public void mediaStreamCreate(String id) {
-        ThreadUtils.runOnExecutor(() -> mediaStreamCreateAsync(id));
+        ThreadUtils.runOnExecutor("mediaStreamCreate", "stream:" + id, () ->
+                mediaStreamCreateAsync(id));
     }
 
     private void mediaStreamCreateAsync(String id) {
+        if (initFailed) {
+            Log.e(TAG, "mediaStreamCreate() WebRTCModule failed to initialize");
+            return;
+        }
         MediaStream mediaStream = mFactory.createLocalMediaStream(id);
         localStreams.put(id, mediaStream);
     }
 
     @ReactMethod
     public void mediaStreamAddTrack(String streamId, String trackId) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor("mediaStreamAddTrack", "stream:" + streamId, () ->
                 mediaStreamAddTrackAsync(streamId, trackId));
     }
 
@@ -531,7 +890,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamRemoveTrack(String streamId, String trackId) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor("mediaStreamRemoveTrack", "stream:" + streamId, () ->
                 mediaStreamRemoveTrackAsync(streamId, trackId));
     }
 
@@ -554,7 +913,10 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamRelease(String id) {
-        ThreadUtils.runOnExecutor(() -> mediaStreamReleaseAsync(id));
+        // Tracks of the stream may be enabled/disabled ahead of it: the
+        // release disables and disposes them regardless.
+        ThreadUtils.runOnExecutor("mediaStreamRelease", "stream:" + id, () ->
+                mediaStreamReleaseAsync(id));
     }
 
     private void mediaStreamReleaseAsync(String id) {
@@ -584,17 +946,40 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         localStreams.remove(id);
 
         // MediaStream.dispose() may be called without an exception only if
-        // it's no longer added to any PeerConnection.
-        for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
-            mPeerConnectionObservers.valueAt(i).removeStream(stream);
+        // it's no longer added to any PeerConnection. PeerConnections are
+        // operated on their own executors so remove the stream there and
+        // dispose of it once the last of them is done, without blocking this
+        // executor in the meantime.
+        SparseArray<PeerConnectionObserver> pcos = getPeerConnectionObservers();
+        AtomicInteger pending = new AtomicInteger(pcos.size() + 1);
+        Runnable removed = () -> {
+            if (pending.decrementAndGet() == 0) {
+                ThreadUtils.runOnExecutor("mediaStreamRelease", "stream:" + id, stream::dispose);
+            }
+        };
+        for (int i = 0, size = pcos.size(); i < size; i++) {
+            PeerConnectionObserver pco = pcos.valueAt(i);
+            if (!ThreadUtils.runOnPeerConnectionExecutor(
+                    pcos.keyAt(i),
+                    "mediaStreamRelease",
+                    SIGNALING_ORDERING_KEY,
+                    () -> {
+                        try {
+                            pco.removeStream(stream);
+                        } finally {
+                            removed.run();
+                        }
+                    })) {
+                // The PeerConnection has been closed meanwhile.
+                removed.run();
+            }
         }
-
-        stream.dispose();
+        removed.run();
     }
 
     @ReactMethod
     public void mediaStreamTrackRelease(String id) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor("mediaStreamTrackRelease", "track:" + id, () ->
                 mediaStreamTrackReleaseAsync(id));
     }
 
@@ -610,13 +995,28 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamTrackSetEnabled(String id, boolean enabled) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runUrgentlyOnExecutor("mediaStreamTrackSetEnabled", "track:" + id, () ->
                 mediaStreamTrackSetEnabledAsync(id, enabled));
     }
 
     private void mediaStreamTrackSetEnabledAsync(String id, boolean enabled) {
-        MediaStreamTrack track = getTrack(id);
+        MediaStreamTrack track = getLocalTrack(id);
         if (track == null) {
+            // Remote tracks are disposed of by PeerConnectionObserver.close()
+            // on the executor of their PeerConnection so only touch them
+            // there.
+            SparseArray<PeerConnectionObserver> pcos = getPeerConnectionObservers();
+            for (int i = 0, size = pcos.size(); i < size; i++) {
+                PeerConnectionObserver pco = pcos.valueAt(i);
+                if (pco.remoteTracks.containsKey(id)) {
+                    ThreadUtils.runUrgentlyOnPeerConnectionExecutor(
+                        pcos.keyAt(i),
+                        "mediaStreamTrackSetEnabled",
+                        "track:" + id,
+                        () -> pco.setRemoteTrackEnabled(id, enabled));
+                    return;
+                }
+            }
             Log.d(TAG, "mediaStreamTrackSetEnabled() track is null");
             return;
         } else if (track.enabled() == enabled) {
@@ -637,7 +1037,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void peerConnectionSetConfiguration(ReadableMap configuration,
                                                int id) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionSetConfiguration", SIGNALING_ORDERING_KEY, () ->
                 peerConnectionSetConfigurationAsync(configuration, id));
     }
 
@@ -649,21 +1049,30 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             return;
         }
         peerConnection.setConfiguration(parseRTCConfiguration(configuration));
+
+        // Like the rest of the configuration, a window which is not given
+        // anymore is reset to its default.
+        PeerConnectionObserver pco = getPeerConnectionObserver(id);
+        if (pco != null) {
+            pco.setIceCandidateCoalescingWindow(
+                parseIceCandidateCoalescingWindow(configuration));
+        }
     }
 
     @ReactMethod
     public void peerConnectionAddStream(String streamId, int id) {
-        ThreadUtils.runOnExecutor(() ->
-                peerConnectionAddStreamAsync(streamId, id));
+        FutureTask<MediaStream> stream = getLocalStreamInOrder(streamId);
+        ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionAddStream", SIGNALING_ORDERING_KEY, () ->
+                peerConnectionAddStreamAsync(stream, id));
     }
 
-    private void peerConnectionAddStreamAsync(String streamId, int id) {
-        MediaStream mediaStream = localStreams.get(streamId);
+    private void peerConnectionAddStreamAsync(FutureTask<MediaStream> stream, int id) {
+        MediaStream mediaStream = awaitLocalStream(stream);
         if (mediaStream == null) {
-            Log.d(TAG, "peerConnectionAddStream() mediaStream is null");
+            Log.e(TAG, "peerConnectionAddStream() mediaStream is null");
             return;
         }
-        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+        PeerConnectionObserver pco = getPeerConnectionObserver(id);
         if (pco == null || !pco.addStream(mediaStream)) {
             Log.e(TAG, "peerConnectionAddStream() failed");
         }
@@ -671,28 +1080,59 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionRemoveStream(String streamId, int id) {
-        ThreadUtils.runOnExecutor(() ->
-                peerConnectionRemoveStreamAsync(streamId, id));
+        FutureTask<MediaStream> stream = getLocalStreamInOrder(streamId);
+        ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionRemoveStream", SIGNALING_ORDERING_KEY, () ->
+                peerConnectionRemoveStreamAsync(stream, id));
     }
 
-    private void peerConnectionRemoveStreamAsync(String streamId, int id) {
-        MediaStream mediaStream = localStreams.get(streamId);
+    private void peerConnectionRemoveStreamAsync(FutureTask<MediaStream> stream, int id) {
+        MediaStream mediaStream = awaitLocalStream(stream);
         if (mediaStream == null) {
             Log.d(TAG, "peerConnectionRemoveStream() mediaStream is null");
             return;
         }
-        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+        PeerConnectionObserver pco = getPeerConnectionObserver(id);
         if (pco == null || !pco.removeStream(mediaStream)) {
             Log.e(TAG, "peerConnectionRemoveStream() failed");
         }
     }
 
+    /**
+     * Gets the local <tt>MediaStream</tt> with the given id on the module
+     * executor after the runnables which operate on it and have been
+     * submitted so far, e.g. by {@link #mediaStreamCreate} and
+     * {@link #mediaStreamAddTrack} right before the stream is added to a
+     * <tt>PeerConnection</tt>. The executor of the <tt>PeerConnection</tt>
+     * waits for it with {@link #awaitLocalStream} so that the calls stay in
+     * the order in which JS made them.
+     */
+    private FutureTask<MediaStream> getLocalStreamInOrder(String streamId) {
+        FutureTask<MediaStream> stream
+            = new FutureTask<>(() -> localStreams.get(streamId));
+        ThreadUtils.runOnExecutor("getLocalStream", "stream:" + streamId, stream);
+        return stream;
+    }
+
+    @Nullable
+    private static MediaStream awaitLocalStream(FutureTask<MediaStream> stream) {
+        try {
+            return stream.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Failed to get local MediaStream", e);
+        }
+        return null;
+    }
+
     @ReactMethod
     public void peerConnectionCreateOffer(int id,
                                           ReadableMap options,
                                           Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
-                peerConnectionCreateOfferAsync(id, options, callback));
+        if (!ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionCreateOffer", SIGNALING_ORDERING_KEY, () ->
+                peerConnectionCreateOfferAsync(id, options, callback))) {
+            callback.invoke(false, "peerConnection is null");
+        }
     }
 
     private void peerConnectionCreateOfferAsync(int id,
@@ -731,8 +1171,10 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void peerConnectionCreateAnswer(int id,
                                            ReadableMap options,
                                            Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
-                peerConnectionCreateAnswerAsync(id, options, callback));
+        if (!ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionCreateAnswer", SIGNALING_ORDERING_KEY, () ->
+                peerConnectionCreateAnswerAsync(id, options, callback))) {
+            callback.invoke(false, "peerConnection is null");
+        }
     }
 
     private void peerConnectionCreateAnswerAsync(int id,
@@ -771,8 +1213,10 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void peerConnectionSetLocalDescription(ReadableMap sdpMap,
                                                   int id,
                                                   Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
-                peerConnectionSetLocalDescriptionAsync(sdpMap, id, callback));
+        if (!ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionSetLocalDescription", SIGNALING_ORDERING_KEY, () ->
+                peerConnectionSetLocalDescriptionAsync(sdpMap, id, callback))) {
+            callback.invoke(false, "peerConnection is null");
+        }
     }
 
     private void peerConnectionSetLocalDescriptionAsync(ReadableMap sdpMap,
@@ -817,8 +1261,10 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void peerConnectionSetRemoteDescription(ReadableMap sdpMap,
                                                    int id,
                                                    Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
-                peerConnectionSetRemoteDescriptionAsync(sdpMap, id, callback));
+        if (!ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionSetRemoteDescription", SIGNALING_ORDERING_KEY, () ->
+                peerConnectionSetRemoteDescriptionAsync(sdpMap, id, callback))) {
+            callback.invoke(false, "peerConnection is null");
+        }
     }
 
     private void peerConnectionSetRemoteDescriptionAsync(ReadableMap sdpMap,
@@ -863,8 +1309,10 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void peerConnectionAddICECandidate(ReadableMap candidateMap,
                                               int id,
                                               Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
-                peerConnectionAddICECandidateAsync(candidateMap, id, callback));
+        if (!ThreadUtils.runUrgentlyOnPeerConnectionExecutor(id, "peerConnectionAddICECandidate", SIGNALING_ORDERING_KEY, () ->
+                peerConnectionAddICECandidateAsync(candidateMap, id, callback))) {
+            callback.invoke(false);
+        }
     }
 
     private void peerConnectionAddICECandidateAsync(ReadableMap candidateMap,
@@ -887,44 +1335,309 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         Log.d(TAG, "peerConnectionAddICECandidate() end");
     }
 
+    /**
+     * Adds a batch of remote ICE candidates to a <tt>PeerConnection</tt> in a
+     * single task. Candidates are added in the given order and are ordered
+     * with respect to session description changes just like the candidates
+     * added by {@link #peerConnectionAddICECandidate}.
+     *
+     * @param candidates the candidates to add
+     * @param id the id of the <tt>PeerConnection</tt>
+     * @param callback invoked with an array with an element per candidate
+     * which is {@code true} if the candidate was added or the reason why it
+     * was not
+     */
     @ReactMethod
-    public void peerConnectionGetStats(String trackId, int id, Callback cb) {
-        ThreadUtils.runOnExecutor(() ->
-                peerConnectionGetStatsAsync(trackId, id, cb));
+    public void peerConnectionAddICECandidates(ReadableArray candidates,
+                                               int id,
+                                               Callback callback) {
+        if (!ThreadUtils.runUrgentlyOnPeerConnectionExecutor(id, "peerConnectionAddICECandidates", SIGNALING_ORDERING_KEY, () ->
+                peerConnectionAddICECandidatesAsync(candidates, id, callback))) {
+            peerConnectionAddICECandidatesAsync(candidates, id, callback);
+        }
     }
 
-    private void peerConnectionGetStatsAsync(String trackId,
-                                             int id,
-                                             Callback cb) {
-        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+    private void peerConnectionAddICECandidatesAsync(ReadableArray candidates,
+                                                     int id,
+                                                     Callback callback) {
+        PeerConnection peerConnection = getPeerConnection(id);
+        WritableArray results = Arguments.createArray();
+        final int size = candidates.size();
+
+        if (peerConnection == null) {
+            Log.d(TAG, "peerConnectionAddICECandidates() peerConnection is null");
+        }
+        for (int i = 0; i < size; i++) {
+            String error;
+            if (peerConnection == null) {
+                error = "peerConnection is null";
+            } else {
+                error = addIceCandidate(peerConnection, candidates, i);
+            }
+            if (error == null) {
+                results.pushBoolean(true);
+            } else {
+                results.pushString(error);
+            }
+        }
+        callback.invoke(results);
+    }
+
+    /**
+     * Adds one of a batch of remote ICE candidates. A malformed candidate
+     * fails on its own rather than the whole batch.
+     *
+     * @return {@code null} if the candidate was added or the reason why it
+     * was not
+     */
+    @Nullable
+    private static String addIceCandidate(PeerConnection peerConnection,
+                                          ReadableArray candidates,
+                                          int index) {
+        IceCandidate candidate;
+        try {
+            ReadableMap candidateMap = candidates.getMap(index);
+            candidate = new IceCandidate(
+                    candidateMap.getString("sdpMid"),
+                    candidateMap.getInt("sdpMLineIndex"),
+                    candidateMap.getString("candidate")
+            );
+        } catch (RuntimeException e) {
+            Log.d(TAG, "peerConnectionAddICECandidates() malformed candidate", e);
+            return "Malformed ICE candidate: " + e.getMessage();
+        }
+        if (!peerConnection.addIceCandidate(candidate)) {
+            return "Failed to add ICE candidate";
+        }
+        return null;
+    }
+
+    /**
+     * Gets the standard stats of a <tt>PeerConnection</tt> as a JSON array of
+     * <tt>[id, stats]</tt> pairs which JS turns into an
+     * <tt>RTCStatsReport</tt>.
+     *
+     * @param filter optional <tt>types</tt>, <tt>fields</tt> and
+     * <tt>ssrcs</tt> arrays which select the stats and members to include
+     * before they are serialized
+     */
+    @ReactMethod
+    public void peerConnectionGetStats(int id,
+                                       @Nullable ReadableMap filter,
+                                       Promise promise) {
+        if (!ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionGetStats", "stats", () ->
+                peerConnectionGetStatsAsync(id, StatsFilter.fromMap(filter), promise))) {
+            promise.reject("E_INVALID", "PeerConnection ID not found");
+        }
+    }
+
+    private void peerConnectionGetStatsAsync(int id,
+                                             @Nullable StatsFilter filter,
+                                             Promise promise) {
+        PeerConnectionObserver pco = getPeerConnectionObserver(id);
         if (pco == null || pco.getPeerConnection() == null) {
             Log.d(TAG, "peerConnectionGetStats() peerConnection is null");
-            cb.invoke(false, "PeerConnection ID not found");
+            promise.reject("E_INVALID", "PeerConnection ID not found");
         } else {
-            pco.getStats(trackId, cb);
+            pco.getStats(filter, promise);
+        }
+    }
+
+    /**
+     * Gets the stats of many <tt>PeerConnection</tt>s at once, requested at
+     * the same time so that they are aligned, and resolves with a single JSON
+     * report of <tt>[id, stats]</tt> pairs in which the ids are prefixed with
+     * the id of their <tt>PeerConnection</tt> and the stats carry it as
+     * <tt>peerConnectionId</tt>. <tt>PeerConnection</tt>s which do not exist
+     * or do not deliver their stats in time are left out.
+     *
+     * @param ids the ids of the <tt>PeerConnection</tt>s or {@code null} for
+     * all of them
+     * @param filter optional <tt>types</tt>, <tt>fields</tt> and
+     * <tt>ssrcs</tt> arrays which select the stats and members to include
+     */
+    @ReactMethod
+    public void getStatsForPeerConnections(@Nullable ReadableArray ids,
+                                           @Nullable ReadableMap filter,
+                                           Promise promise) {
+        // Only the PeerConnections which exist right now are asked for their
+        // stats, all from this thread so that they are taken at about the
+        // same time.
+        SparseArray<PeerConnectionObserver> pcos = getPeerConnectionObservers();
+        if (ids != null) {
+            SparseArray<PeerConnectionObserver> selected = new SparseArray<>();
+            for (int i = 0; i < ids.size(); i++) {
+                PeerConnectionObserver pco = pcos.get(ids.getInt(i));
+                if (pco != null) {
+                    selected.put(ids.getInt(i), pco);
+                }
+            }
+            pcos = selected;
+        }
+
+        new StatsAggregator(pcos, StatsFilter.fromMap(filter), promise)
+            .start();
+    }
+
+    /**
+     * Starts pushing the stats of a <tt>PeerConnection</tt> to JS in
+     * <tt>peerConnectionStatsSample</tt> events, each carrying only the stats
+     * members which changed since the previous one and the rates derived from
+     * the counters (<tt>sendBitrate</tt>, <tt>receiveBitrate</tt>,
+     * <tt>packetsLostPerSecond</tt>, <tt>framesEncodedPerSecond</tt> and
+     * <tt>framesDecodedPerSecond</tt>).
+     *
+     * @param interval the sampling interval in milliseconds
+     * @param filter the stats, members and rates to emit, like the filter of
+     * {@link #peerConnectionGetStats}, or {@code null} for all of them
+     */
+    @ReactMethod
+    public void peerConnectionStartStatsSampling(int id,
+                                                 int interval,
+                                                 @Nullable ReadableMap filter) {
+        ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionStartStatsSampling", "stats", () -> {
+            PeerConnectionObserver pco = getPeerConnectionObserver(id);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionStartStatsSampling() peerConnection is null");
+                return;
+            }
+            pco.startStatsSampling(interval, StatsFilter.fromMap(filter));
+        });
+    }
+
+    @ReactMethod
+    public void peerConnectionStopStatsSampling(int id) {
+        ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionStopStatsSampling", "stats", () -> {
+            PeerConnectionObserver pco = getPeerConnectionObserver(id);
+            if (pco != null) {
+                pco.stopStatsSampling();
+            }
+        });
+    }
+
+    /**
+     * Starts recording the stats of a <tt>PeerConnection</tt> natively, in a
+     * ring buffer of the last <tt>capacity</tt> samples, for
+     * {@link #peerConnectionGetStatsHistory}. Nothing crosses the bridge while
+     * recording.
+     *
+     * @param interval the sampling interval in milliseconds
+     * @param capacity the number of samples to keep
+     * @param filter the stats and members to record, like the filter of
+     * {@link #peerConnectionGetStats}, or {@code null} for all of them
+     */
+    @ReactMethod
+    public void peerConnectionStartStatsHistory(int id,
+                                                int interval,
+                                                int capacity,
+                                                @Nullable ReadableMap filter) {
+        ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionStartStatsHistory", "stats", () -> {
+            PeerConnectionObserver pco = getPeerConnectionObserver(id);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionStartStatsHistory() peerConnection is null");
+                return;
+            }
+            pco.startStatsHistory(interval, capacity, StatsFilter.fromMap(filter));
+        });
+    }
+
+    /**
+     * Stops recording the stats of a <tt>PeerConnection</tt> and discards
+     * the history, including the one kept after the <tt>PeerConnection</tt>
+     * was closed.
+     */
+    @ReactMethod
+    public void peerConnectionStopStatsHistory(int id) {
+        if (!ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionStopStatsHistory", "stats", () -> {
+            PeerConnectionObserver pco = getPeerConnectionObserver(id);
+            if (pco != null) {
+                pco.stopStatsHistory();
+            } else {
+                takeClosedStatsHistory(id);
+            }
+        })) {
+            takeClosedStatsHistory(id);
+        }
+    }
+
+    /**
+     * Gets the recorded stats history of a <tt>PeerConnection</tt> as JSON
+     * (see {@link StatsHistory#toJSON}) or {@code null} if none is being
+     * recorded. The history recorded until the <tt>PeerConnection</tt> was
+     * closed may be queried once afterwards.
+     *
+     * @param query optional <tt>from</tt> and <tt>to</tt> timestamps and
+     * <tt>ids</tt>, <tt>types</tt> and <tt>metrics</tt> arrays
+     */
+    @ReactMethod
+    public void peerConnectionGetStatsHistory(int id,
+                                              @Nullable ReadableMap query,
+                                              Promise promise) {
+        if (!ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionGetStatsHistory", "stats", () -> {
+            PeerConnectionObserver pco = getPeerConnectionObserver(id);
+            StatsHistory history
+                = pco == null ? takeClosedStatsHistory(id) : pco.getStatsHistory();
+            promise.resolve(history == null ? null : history.toJSON(query));
+        })) {
+            StatsHistory history = takeClosedStatsHistory(id);
+            if (history == null) {
+                promise.resolve(null);
+            } else {
+                ThreadUtils.runOnExecutor("peerConnectionGetStatsHistory", "stats", () ->
+                        promise.resolve(history.toJSON(query)));
+            }
+        }
+    }
+
+    /**
+     * Removes the stats history kept after the <tt>PeerConnection</tt> with
+     * the given id was closed.
+     *
+     * @return the removed history or {@code null} if there is none
+     */
+    @Nullable
+    private StatsHistory takeClosedStatsHistory(int id) {
+        synchronized (closedStatsHistories) {
+            StatsHistory history = closedStatsHistories.get(id);
+            closedStatsHistories.remove(id);
+            return history;
         }
     }
 
     @ReactMethod
     public void peerConnectionClose(int id) {
-        ThreadUtils.runOnExecutor(() -> peerConnectionCloseAsync(id));
+        ThreadUtils.runOnPeerConnectionExecutor(id, "peerConnectionClose", () ->
+                peerConnectionCloseAsync(id));
     }
 
     private void peerConnectionCloseAsync(int id) {
-        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+        PeerConnectionObserver pco = getPeerConnectionObserver(id);
         if (pco == null || pco.getPeerConnection() == null) {
             Log.d(TAG, "peerConnectionClose() peerConnection is null");
         } else {
             pco.close();
-            mPeerConnectionObservers.remove(id);
+            StatsHistory history = pco.getStatsHistory();
+            if (history != null) {
+                synchronized (closedStatsHistories) {
+                    closedStatsHistories.put(id, history);
+                }
+            }
+            synchronized (mPeerConnectionObservers) {
+                mPeerConnectionObservers.remove(id);
+            }
         }
+        ThreadUtils.releasePeerConnectionExecutor(id);
     }
 
     @ReactMethod
     public void createDataChannel(int peerConnectionId,
                                   String label,
                                   ReadableMap config) {
-        ThreadUtils.runOnExecutor(() ->
+        String orderingKey
+                = config != null && config.hasKey("id")
+                    ? dataChannelOrderingKey(config.getInt("id"))
+                    : null;
+        ThreadUtils.runOnPeerConnectionExecutor(peerConnectionId, "createDataChannel", orderingKey, () ->
                 createDataChannelAsync(peerConnectionId, label, config));
     }
 
@@ -934,7 +1647,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         // Forward to PeerConnectionObserver which deals with DataChannels
         // because DataChannel is owned by PeerConnection.
         PeerConnectionObserver pco
-                = mPeerConnectionObservers.get(peerConnectionId);
+                = getPeerConnectionObserver(peerConnectionId);
         if (pco == null || pco.getPeerConnection() == null) {
             Log.d(TAG, "createDataChannel() peerConnection is null");
         } else {
@@ -944,8 +1657,11 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelClose(int peerConnectionId, int dataChannelId) {
-        ThreadUtils.runOnExecutor(() ->
-                dataChannelCloseAsync(peerConnectionId, dataChannelId));
+        ThreadUtils.runOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelClose",
+                dataChannelOrderingKey(dataChannelId),
+                () -> dataChannelCloseAsync(peerConnectionId, dataChannelId));
     }
 
     private void dataChannelCloseAsync(int peerConnectionId,
@@ -953,7 +1669,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         // Forward to PeerConnectionObserver which deals with DataChannels
         // because DataChannel is owned by PeerConnection.
         PeerConnectionObserver pco
-                = mPeerConnectionObservers.get(peerConnectionId);
+                = getPeerConnectionObserver(peerConnectionId);
         if (pco == null || pco.getPeerConnection() == null) {
             Log.d(TAG, "dataChannelClose() peerConnection is null");
         } else {
@@ -966,8 +1682,11 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                                 int dataChannelId,
                                 String data,
                                 String type) {
-        ThreadUtils.runOnExecutor(() ->
-                dataChannelSendAsync(peerConnectionId, dataChannelId, data, type));
+        ThreadUtils.runUrgentlyOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelSend",
+                dataChannelOrderingKey(dataChannelId),
+                () -> dataChannelSendAsync(peerConnectionId, dataChannelId, data, type));
     }
 
     private void dataChannelSendAsync(int peerConnectionId,
@@ -977,7 +1696,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         // Forward to PeerConnectionObserver which deals with DataChannels
         // because DataChannel is owned by PeerConnection.
         PeerConnectionObserver pco
-                = mPeerConnectionObservers.get(peerConnectionId);
+                = getPeerConnectionObserver(peerConnectionId);
         if (pco == null || pco.getPeerConnection() == null) {
             Log.d(TAG, "dataChannelSend() peerConnection is null");
         } else {
@@ -985,8 +1704,530 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Sends many messages on a <tt>DataChannel</tt> with a single bridge call
+     * and a single executor task.
+     *
+     * @param messages the messages to send, each a map with <tt>data</tt> and
+     * <tt>type</tt> like the arguments of {@link #dataChannelSend}
+     * @param callback invoked with an array with an element per message which
+     * is {@code null} if the message was sent or the reason why it was not
+     */
+    @ReactMethod
+    public void dataChannelSendMany(int peerConnectionId,
+                                    int dataChannelId,
+                                    ReadableArray messages,
+                                    Callback callback) {
+        if (!ThreadUtils.runUrgentlyOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelSendMany",
+                dataChannelOrderingKey(dataChannelId),
+                () -> dataChannelSendManyAsync(peerConnectionId, dataChannelId, messages, callback))) {
+            dataChannelSendManyAsync(peerConnectionId, dataChannelId, messages, callback);
+        }
+    }
+
+    private void dataChannelSendManyAsync(int peerConnectionId,
+                                          int dataChannelId,
+                                          ReadableArray messages,
+                                          Callback callback) {
+        PeerConnectionObserver pco
+                = getPeerConnectionObserver(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+            Log.d(TAG, "dataChannelSendMany() peerConnection is null");
+            WritableArray results = Arguments.createArray();
+            for (int i = 0; i < messages.size(); i++) {
+                results.pushString("PeerConnection not found");
+            }
+            callback.invoke(results);
+        } else {
+            callback.invoke(pco.dataChannelSendMany(dataChannelId, messages));
+        }
+    }
+
+    /**
+     * Streams a local file into a <tt>DataChannel</tt> as binary messages
+     * without passing its contents through JS. Progress is reported with
+     * <tt>dataChannelFileTransferProgress</tt> events.
+     *
+     * @param path the path or <tt>file://</tt> URL of the file
+     * @param options <tt>chunkSize</tt>, the size of the messages
+     * @param promise resolved with the number of bytes sent once the whole
+     * file has been handed to the <tt>DataChannel</tt>
+     */
+    @ReactMethod
+    public void dataChannelSendFile(int peerConnectionId,
+                                    int dataChannelId,
+                                    String path,
+                                    @Nullable ReadableMap options,
+                                    Promise promise) {
+        boolean queued = ThreadUtils.runOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelSendFile",
+                dataChannelOrderingKey(dataChannelId),
+                () -> {
+                    DataChannelObserver observer
+                        = getDataChannelObserver(peerConnectionId, dataChannelId);
+                    if (observer == null) {
+                        promise.reject("E_FILE_TRANSFER", "DataChannel not found");
+                        return;
+                    }
+
+                    int chunkSize = DataChannelFileTransfer.Sender.DEFAULT_CHUNK_SIZE;
+                    if (options != null && options.hasKey("chunkSize")) {
+                        chunkSize = Math.max(1, Math.min(
+                            options.getInt("chunkSize"),
+                            DataChannelFileTransfer.Sender.MAX_CHUNK_SIZE));
+                    }
+
+                    DataChannelFileTransfer.Sender sender;
+                    try {
+                        sender = DataChannelFileTransfer.Sender.open(
+                            this,
+                            peerConnectionId,
+                            dataChannelId,
+                            observer,
+                            path,
+                            chunkSize,
+                            promise);
+                    } catch (IOException e) {
+                        promise.reject("E_FILE_TRANSFER", "Failed to open file", e);
+                        return;
+                    }
+                    if (!observer.startFileSender(sender)) {
+                        sender.finish("A file is being sent already");
+                    }
+                });
+        if (!queued) {
+            promise.reject("E_FILE_TRANSFER", "DataChannel not found");
+        }
+    }
+
+    /**
+     * Writes the binary messages received by a <tt>DataChannel</tt> into a
+     * local file until the given number of bytes has been received, without
+     * passing them through JS. Text messages are delivered as usual. Progress
+     * is reported with <tt>dataChannelFileTransferProgress</tt> events.
+     *
+     * @param path the path or <tt>file://</tt> URL of the file to create
+     * @param size the number of bytes to receive
+     * @param promise resolved with the number of bytes received once they
+     * have all been written
+     */
+    @ReactMethod
+    public void dataChannelReceiveFile(int peerConnectionId,
+                                       int dataChannelId,
+                                       String path,
+                                       double size,
+                                       Promise promise) {
+        boolean queued = ThreadUtils.runOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelReceiveFile",
+                dataChannelOrderingKey(dataChannelId),
+                () -> {
+                    DataChannelObserver observer
+                        = getDataChannelObserver(peerConnectionId, dataChannelId);
+                    if (observer == null) {
+                        promise.reject("E_FILE_TRANSFER", "DataChannel not found");
+                        return;
+                    }
+
+                    DataChannelFileTransfer.Receiver receiver;
+                    try {
+                        receiver = DataChannelFileTransfer.Receiver.open(
+                            this,
+                            peerConnectionId,
+                            dataChannelId,
+                            observer.getDataChannel(),
+                            path,
+                            (long) size,
+                            promise);
+                    } catch (IOException e) {
+                        promise.reject("E_FILE_TRANSFER", "Failed to create file", e);
+                        return;
+                    }
+                    if (size <= 0) {
+                        receiver.finish(null);
+                    } else if (!observer.startFileReceiver(receiver)) {
+                        receiver.finish("A file is being received already");
+                    }
+                });
+        if (!queued) {
+            promise.reject("E_FILE_TRANSFER", "DataChannel not found");
+        }
+    }
+
+    /**
+     * Aborts the file transfers on a <tt>DataChannel</tt>, rejecting their
+     * {@code Promise}s.
+     */
+    @ReactMethod
+    public void dataChannelCancelFileTransfers(int peerConnectionId,
+                                               int dataChannelId) {
+        DataChannelObserver observer
+            = getDataChannelObserver(peerConnectionId, dataChannelId);
+        if (observer != null) {
+            observer.cancelFileTransfers("Canceled");
+        }
+    }
+
+    /**
+     * Enables or disables the buffering of the messages received by a
+     * <tt>DataChannel</tt>. While enabled, the messages are not emitted one by
+     * one; a <tt>dataChannelMessagesAvailable</tt> event tells JS to pull them
+     * with {@link #dataChannelReceive}. Once disabled, JS stops pulling and
+     * the messages which are still buffered are emitted in
+     * <tt>dataChannelReceiveMessages</tt> events, in order.
+     */
+    @ReactMethod
+    public void dataChannelSetBufferedReceive(int peerConnectionId,
+                                              int dataChannelId,
+                                              boolean enabled) {
+        ThreadUtils.runOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelSetBufferedReceive",
+                dataChannelOrderingKey(dataChannelId),
+                () -> {
+                    DataChannelObserver observer
+                        = getDataChannelObserver(peerConnectionId, dataChannelId);
+                    if (observer == null) {
+                        Log.d(TAG, "dataChannelSetBufferedReceive() dataChannel is null");
+                    } else {
+                        observer.setBufferedReceive(enabled);
+                    }
+                });
+    }
+
+    /**
+     * Enables or disables the coalescing of the messages received by a
+     * <tt>DataChannel</tt> into <tt>dataChannelReceiveMessages</tt> events.
+     *
+     * @param interval the maximum time in milliseconds a message is held back;
+     * 0 to disable coalescing
+     * @param maxMessages the number of messages which are delivered right
+     * away; 0 for no limit
+     * @param maxBytes the number of bytes which are delivered right away and
+     * the maximum size of a batch; 0 for no limit
+     */
+    @ReactMethod
+    public void dataChannelSetReceiveCoalescing(int peerConnectionId,
+                                                int dataChannelId,
+                                                int interval,
+                                                int maxMessages,
+                                                int maxBytes) {
+        ThreadUtils.runOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelSetReceiveCoalescing",
+                dataChannelOrderingKey(dataChannelId),
+                () -> {
+                    DataChannelObserver observer
+                        = getDataChannelObserver(peerConnectionId, dataChannelId);
+                    if (observer == null) {
+                        Log.d(TAG, "dataChannelSetReceiveCoalescing() dataChannel is null");
+                    } else {
+                        observer.setReceiveCoalescing(interval, maxMessages, maxBytes);
+                    }
+                });
+    }
+
+    /**
+     * Pulls the messages buffered for a <tt>DataChannel</tt>. Doesn't wait
+     * behind the calls queued on the executor of the <tt>PeerConnection</tt>.
+     *
+     * @param maxBytes the maximum total size of the messages to pull; at least
+     * one message is pulled if there is any
+     * @param promise resolved with the messages (see
+     * {@link DataChannelReceiveBuffer#poll}) or {@code null} if the messages
+     * of the <tt>DataChannel</tt> are not buffered
+     */
+    @ReactMethod
+    public void dataChannelReceive(int peerConnectionId,
+                                   int dataChannelId,
+                                   int maxBytes,
+                                   Promise promise) {
+        DataChannelObserver observer
+            = getDataChannelObserver(peerConnectionId, dataChannelId);
+        promise.resolve(observer == null ? null : observer.pollMessages(maxBytes));
+    }
+
+    /**
+     * Sets the amount of buffered bytes at or below which a
+     * <tt>DataChannel</tt> reports its buffered amount as low.
+     */
+    @ReactMethod
+    public void dataChannelSetBufferedAmountLowThreshold(int peerConnectionId,
+                                                         int dataChannelId,
+                                                         double threshold) {
+        ThreadUtils.runOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelSetBufferedAmountLowThreshold",
+                dataChannelOrderingKey(dataChannelId),
+                () -> {
+                    DataChannelObserver observer
+                        = getDataChannelObserver(peerConnectionId, dataChannelId);
+                    if (observer == null) {
+                        Log.d(TAG, "dataChannelSetBufferedAmountLowThreshold() dataChannel is null");
+                    } else {
+                        observer.setBufferedAmountLowThreshold((long) threshold);
+                    }
+                });
+    }
+
+    /**
+     * Gets the number of bytes queued for sending on a <tt>DataChannel</tt>.
+     * Doesn't wait behind the calls queued on the executor of the
+     * <tt>PeerConnection</tt>.
+     */
+    @ReactMethod
+    public void dataChannelGetBufferedAmount(int peerConnectionId,
+                                             int dataChannelId,
+                                             Promise promise) {
+        DataChannelObserver observer
+            = getDataChannelObserver(peerConnectionId, dataChannelId);
+        promise.resolve(
+            observer == null ? 0 : (double) observer.getPendingAmount());
+    }
+
+    /**
+     * Sets the priority and the weight with which the messages sent on a
+     * <tt>DataChannel</tt> are scheduled against the ones of the other
+     * <tt>DataChannel</tt>s of its <tt>PeerConnection</tt>. The first call for
+     * a <tt>PeerConnection</tt> routes all of its <tt>DataChannel</tt>s
+     * through a send scheduler.
+     *
+     * @param priority the messages of the <tt>DataChannel</tt>s with the
+     * highest priority are sent first
+     * @param weight the share of the send budget of the <tt>DataChannel</tt>
+     * relative to the others of the same priority
+     */
+    @ReactMethod
+    public void dataChannelSetSendPriority(int peerConnectionId,
+                                           int dataChannelId,
+                                           int priority,
+                                           int weight) {
+        ThreadUtils.runOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelSetSendPriority",
+                dataChannelOrderingKey(dataChannelId),
+                () -> {
+                    PeerConnectionObserver pco
+                        = getPeerConnectionObserver(peerConnectionId);
+                    if (pco == null || pco.getPeerConnection() == null) {
+                        Log.d(TAG, "dataChannelSetSendPriority() peerConnection is null");
+                    } else {
+                        pco.dataChannelSetSendPriority(dataChannelId, priority, weight);
+                    }
+                });
+    }
+
+    /**
+     * Sets the total buffered amount of the <tt>DataChannel</tt>s of a
+     * <tt>PeerConnection</tt> above which their send scheduler holds messages
+     * back. Smaller budgets lower the latency of high priority messages during
+     * bulk transfers at the expense of throughput.
+     */
+    @ReactMethod
+    public void peerConnectionSetDataChannelSendBudget(int peerConnectionId,
+                                                       double budget) {
+        ThreadUtils.runOnPeerConnectionExecutor(
+                peerConnectionId,
+                "peerConnectionSetDataChannelSendBudget",
+                () -> {
+                    PeerConnectionObserver pco
+                        = getPeerConnectionObserver(peerConnectionId);
+                    if (pco == null || pco.getPeerConnection() == null) {
+                        Log.d(TAG, "peerConnectionSetDataChannelSendBudget() peerConnection is null");
+                    } else {
+                        pco.setDataChannelSendBudget((long) budget);
+                    }
+                });
+    }
+
+    /**
+     * Enables or disables the compression of the messages sent and received
+     * on a <tt>DataChannel</tt>. <tt>DataChannel</tt>s with a <tt>deflate</tt>
+     * label, or created locally with a <tt>deflate</tt> protocol, have it
+     * enabled already; the ones announced by the remote peer with a
+     * <tt>deflate</tt> protocol only have to enable it explicitly because the
+     * protocol of a <tt>DataChannel</tt> is not available here.
+     *
+     * @param threshold the size of the messages at or above which they are
+     * deflated
+     */
+    @ReactMethod
+    public void dataChannelSetCompression(int peerConnectionId,
+                                          int dataChannelId,
+                                          boolean enabled,
+                                          int threshold) {
+        ThreadUtils.runOnPeerConnectionExecutor(
+                peerConnectionId,
+                "dataChannelSetCompression",
+                dataChannelOrderingKey(dataChannelId),
+                () -> {
+                    DataChannelObserver observer
+                        = getDataChannelObserver(peerConnectionId, dataChannelId);
+                    if (observer == null) {
+                        Log.d(TAG, "dataChannelSetCompression() dataChannel is null");
+                    } else {
+                        observer.setCompression(
+                            enabled ? new DataChannelCompression(threshold) : null);
+                    }
+                });
+    }
+
+    /**
+     * Gets the compression statistics of a <tt>DataChannel</tt> or
+     * {@code null} if its messages are not compressed.
+     */
+    @ReactMethod
+    public void dataChannelGetCompressionStats(int peerConnectionId,
+                                               int dataChannelId,
+                                               Promise promise) {
+        DataChannelObserver observer
+            = getDataChannelObserver(peerConnectionId, dataChannelId);
+        DataChannelCompression compression
+            = observer == null ? null : observer.getCompression();
+        promise.resolve(compression == null ? null : compression.getStats());
+    }
+
+    @Nullable
+    private DataChannelObserver getDataChannelObserver(int peerConnectionId,
+                                                       int dataChannelId) {
+        PeerConnectionObserver pco = getPeerConnectionObserver(peerConnectionId);
+        return pco == null ? null : pco.getDataChannelObserver(dataChannelId);
+    }
+
+    /**
+     * Enables or disables the batching of events. While enabled, events are
+     * emitted to JS in batches, one per UI frame or per the given interval,
+     * and unpacked by the JS event emitter.
+     *
+     * @param enabled
+     * @param interval the interval in milliseconds between two batches; 0 to
+     * emit a batch per UI frame
+     */
+    @ReactMethod
+    public void setEventBatching(boolean enabled, int interval) {
+        eventBatcher.configure(enabled, interval);
+    }
+
+    /**
+     * Notifies this module that JS reports which of the
+     * {@link #OBSERVABLE_EVENTS} it observes through
+     * {@link #setEventObserved}, so that the others are no longer sent.
+     */
+    @ReactMethod
+    public void setEventListenersTracked(boolean tracked) {
+        eventListenersTracked = tracked;
+    }
+
+    /**
+     * Notifies this module whether JS observes the event with the given name
+     * for the object with the given key (see {@link #OBSERVABLE_EVENTS}).
+     *
+     * @param eventName the name of the event
+     * @param key the key of the object or {@code null} for events which are
+     * observed as a whole
+     * @param observed whether the event is observed
+     */
+    @ReactMethod
+    public void setEventObserved(String eventName,
+                                 @Nullable String key,
+                                 boolean observed) {
+        String observedEvent = key == null ? eventName : eventName + "/" + key;
+        if (!observed) {
+            observedEvents.remove(observedEvent);
+            return;
+        }
+        observedEvents.add(observedEvent);
+
+        // The gathering state may have changed while it was not observed.
+        if (key != null && eventName.equals("peerConnectionIceGatheringChanged")) {
+            try {
+                PeerConnectionObserver pco
+                    = getPeerConnectionObserver(Integer.parseInt(key));
+                if (pco != null) {
+                    pco.emitIceGatheringState();
+                }
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "setEventObserved() invalid PeerConnection id " + key);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of events which have not been emitted because they had
+     * no listeners mapped by event name.
+     */
+    @ReactMethod
+    public void getSkippedEventCounts(Promise promise) {
+        WritableMap counts = Arguments.createMap();
+        for (Map.Entry<String, AtomicInteger> e : skippedEvents.entrySet()) {
+            counts.putInt(e.getKey(), e.getValue().get());
+        }
+        promise.resolve(counts);
+    }
+
+    /**
+     * Gets the statistics of the {@link ExecutorWatchdog} i.e. the queue wait
+     * and run times of the tasks of all executors per {@code ReactMethod},
+     * the tasks currently running and the most recent stalls.
+     */
+    @ReactMethod
+    public void getExecutorStats(Promise promise) {
+        promise.resolve(ThreadUtils.getWatchdog().getSnapshot());
+    }
+
+    /**
+     * Resolves the given {@code Promise} once this module has initialized,
+     * with the durations in milliseconds of the phases of the initialization.
+     * May be called at any time, including long after the initialization
+     * completed; doesn't wait behind other queued calls.
+     */
+    @ReactMethod
+    public void whenInitialized(Promise promise) {
+        WritableMap timings;
+
+        synchronized (initializedPromises) {
+            if (!initCompleted) {
+                initializedPromises.add(promise);
+                return;
+            }
+            timings = initTimings;
+        }
+        settleInitializedPromise(promise, timings);
+    }
+
+    /**
+     * Gets the time spent on the network thread of libwebrtc per message
+     * received by the <tt>DataChannel</tt>s.
+     */
+    @ReactMethod
+    public void getDataChannelMetrics(Promise promise) {
+        promise.resolve(DataChannelMetrics.getSnapshot());
+    }
+
     @ReactMethod
     public void takePhoto(Promise promise) {
         WebRTCView.getInstance().takePhoto(promise);
     }
+
+    /**
+     * The video codec factories with which {@link #mFactory} is to be created
+     * and the time it took to create them.
+     */
+    private static final class VideoCodecFactories {
+        final VideoEncoderFactory encoderFactory;
+        final VideoDecoderFactory decoderFactory;
+        final double duration;
+
+        VideoCodecFactories(
+                VideoEncoderFactory encoderFactory,
+                VideoDecoderFactory decoderFactory,
+                double duration) {
+            this.encoderFactory = encoderFactory;
+            this.decoderFactory = decoderFactory;
+            this.duration = duration;
+        }
+    }
 }
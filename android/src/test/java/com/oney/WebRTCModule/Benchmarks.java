@@ -0,0 +1,29 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Gates the benchmarks, which take a while, print their results and assert
+ * on the allocations the JVM reports, out of the regular test run. Run them
+ * with
+ * <pre>./gradlew test -PwebrtcBenchmarks --tests '*Benchmark' -i</pre>
+ */
+final class Benchmarks {
+    /**
+     * The system property which enables the benchmarks. Set by the Gradle
+     * build when the <tt>webrtcBenchmarks</tt> project property is given.
+     */
+    static final String ENABLED_PROPERTY = "webrtc.benchmarks";
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Skips the calling test unless the benchmarks are enabled.
+     */
+    static void assumeEnabled() {
+        assumeTrue(
+            "Benchmarks are run with -PwebrtcBenchmarks",
+            Boolean.getBoolean(ENABLED_PROPERTY));
+    }
+}
@@ -0,0 +1,41 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+    @Test
+    public void growsWithPayloads() {
+        ByteBufferPool pool = new ByteBufferPool(1, 4096);
+
+        ByteBuffer small = pool.acquire(100);
+        pool.release(small);
+        ByteBuffer large = pool.acquire(3000);
+        assertTrue(large.capacity() >= 3000);
+        pool.release(large);
+        assertTrue(pool.acquire(3000) == large);
+
+        ByteBuffer huge = pool.acquire(10000);
+        assertEquals(10000, huge.capacity());
+        pool.release(huge);
+        assertTrue(pool.acquire(10000) != huge);
+    }
+
+    @Test
+    public void copiesRemainingBytes() {
+        ByteBufferPool pool = new ByteBufferPool(1, 4096);
+        ByteBuffer data = ByteBuffer.allocateDirect(8);
+        data.put(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}).flip();
+        data.position(2).limit(6);
+
+        ByteBuffer copy = pool.copyOf(data);
+        assertEquals(0, data.remaining());
+        assertEquals(4, copy.remaining());
+        assertEquals(3, copy.get(0));
+        assertEquals(6, copy.get(3));
+    }
+}
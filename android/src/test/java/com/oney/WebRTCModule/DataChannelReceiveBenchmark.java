@@ -0,0 +1,176 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures the messages per second and the bytes allocated per message of
+ * the stages of the <tt>DataChannel</tt> receive path which run for every
+ * message: copying the payload out of the direct buffer of libwebrtc and
+ * decoding text. The path before the reuse of buffers and decoders is run
+ * side by side with the current one on the same messages.
+ *
+ * <p>Skipped unless enabled as described in {@link Benchmarks}.</p>
+ */
+public class DataChannelReceiveBenchmark {
+    private static final int MESSAGE_COUNT = 200000;
+    private static final int WARMUP_COUNT = 50000;
+
+    @Before
+    public void enabled() {
+        Benchmarks.assumeEnabled();
+    }
+
+    /**
+     * Receives messages the way <tt>DataChannelObserver</tt> used to: a new
+     * array per message and a charset lookup per text message.
+     */
+    private static final class BaselineReceiver {
+        Object receive(ByteBuffer data, boolean binary) {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            return binary ? bytes : new String(bytes, Charset.forName("UTF-8"));
+        }
+    }
+
+    /**
+     * Receives messages the way <tt>DataChannelObserver</tt> does now: the
+     * payload is copied into a pooled buffer on the network thread and text
+     * is decoded from it on the worker which then releases the buffer. Both
+     * run on the calling thread here.
+     */
+    private static final class Receiver {
+        private final ByteBufferPool pool = new ByteBufferPool(32, 64 * 1024);
+        private final Utf8Decoder textDecoder = new Utf8Decoder();
+
+        Object receive(ByteBuffer data, boolean binary) {
+            ByteBuffer payload = pool.copyOf(data);
+            try {
+                return binary ? payload.array() : textDecoder.decode(payload);
+            } finally {
+                pool.release(payload);
+            }
+        }
+    }
+
+    private interface ReceiveFunction {
+        Object receive(ByteBuffer data, boolean binary);
+    }
+
+    @Test
+    public void textMessages() {
+        compare(
+            "text",
+            directBuffer("{\"type\":\"position\",\"x\":12.5,\"y\":-3.25,\"t\":1700000000000,\"label\":\"caf\u00e9 \u2713\"}"),
+            false);
+    }
+
+    @Test
+    public void binaryMessages() {
+        byte[] payload = new byte[1200];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) i;
+        }
+        ByteBuffer data = ByteBuffer.allocateDirect(payload.length);
+        data.put(payload).flip();
+
+        compare("binary", data, true);
+    }
+
+    private static void compare(String name, ByteBuffer data, boolean binary) {
+        BaselineReceiver baseline = new BaselineReceiver();
+        Receiver receiver = new Receiver();
+
+        Object expected = baseline.receive(data.duplicate(), binary);
+        Object actual = receiver.receive(data.duplicate(), binary);
+        if (binary) {
+            assertTrue(Arrays.equals(
+                (byte[]) expected,
+                Arrays.copyOf((byte[]) actual, ((byte[]) expected).length)));
+        } else {
+            assertEquals(expected, actual);
+        }
+
+        Result before = run(baseline::receive, data, binary);
+        Result after = run(receiver::receive, data, binary);
+
+        System.out.println(name + " " + data.remaining() + "B before: " + before);
+        System.out.println(name + " " + data.remaining() + "B after:  " + after);
+
+        if (before.bytesPerMessage >= 0) {
+            assertTrue(after.bytesPerMessage < before.bytesPerMessage);
+        }
+    }
+
+    private static Result run(
+            ReceiveFunction function,
+            ByteBuffer data,
+            boolean binary) {
+        Object sink = null;
+        for (int i = 0; i < WARMUP_COUNT; i++) {
+            sink = function.receive(data.duplicate(), binary);
+        }
+
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            sink = function.receive(data.duplicate(), binary);
+        }
+        long time = System.nanoTime() - startTime;
+        long bytes = allocatedBytes() - startBytes;
+
+        assertTrue(sink != null);
+
+        // The duplicate() of the benchmark itself is included in both.
+        return new Result(
+            MESSAGE_COUNT * 1e9 / time,
+            startBytes < 0 ? -1 : bytes / MESSAGE_COUNT);
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread so far or -1
+     * if the JVM does not tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean
+            = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static ByteBuffer directBuffer(String text) {
+        byte[] bytes = text.getBytes(Utf8Decoder.UTF_8);
+        ByteBuffer data = ByteBuffer.allocateDirect(bytes.length);
+        data.put(bytes).flip();
+        return data;
+    }
+
+    private static final class Result {
+        final double messagesPerSecond;
+        final long bytesPerMessage;
+
+        Result(double messagesPerSecond, long bytesPerMessage) {
+            this.messagesPerSecond = messagesPerSecond;
+            this.bytesPerMessage = bytesPerMessage;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "%.0f messages/s, %d bytes allocated/message",
+                messagesPerSecond,
+                bytesPerMessage);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.webrtc.RTCStats;
+
+/**
+ * Measures the time and the bytes allocated to encode the stats of six
+ * <tt>PeerConnection</tt>s, each with an audio and a video track in each
+ * direction, the way <tt>StatsAggregator</tt> writes them.
+ *
+ * <p>Skipped unless enabled as described in {@link Benchmarks}.</p>
+ */
+public class StatsJsonWriterBenchmark {
+    private static final int PEER_CONNECTION_COUNT = 6;
+    private static final int REPORT_COUNT = 2000;
+    private static final int WARMUP_COUNT = 500;
+
+    @Before
+    public void enabled() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void sixPeerReport() {
+        List<List<RTCStats>> reports = new ArrayList<>();
+        int statsCount = 0;
+        for (int i = 0; i < PEER_CONNECTION_COUNT; i++) {
+            List<RTCStats> report = createReport(i);
+            reports.add(report);
+            statsCount += report.size();
+        }
+
+        String json = encode(reports);
+        for (int i = 0; i < WARMUP_COUNT; i++) {
+            json = encode(reports);
+        }
+
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < REPORT_COUNT; i++) {
+            json = encode(reports);
+        }
+        long time = System.nanoTime() - startTime;
+        long bytes = allocatedBytes() - startBytes;
+
+        System.out.println(String.format(
+            "%d stats, %d chars: %.1f us/report, %s bytes allocated/report",
+            statsCount,
+            json.length(),
+            time / 1e3 / REPORT_COUNT,
+            startBytes < 0 ? "?" : String.valueOf(bytes / REPORT_COUNT)));
+
+        assertTrue(json.startsWith("[[\"0/"));
+        assertTrue(json.endsWith("}]]"));
+        if (startBytes >= 0) {
+            // The writer's buffer is reused, so what is allocated is mostly
+            // the resulting String and the text of BigInteger members.
+            assertTrue(bytes / REPORT_COUNT < 4L * json.length());
+        }
+    }
+
+    private static String encode(List<List<RTCStats>> reports) {
+        StatsJsonWriter writer = StatsJsonWriter.get();
+        try {
+            writer.append('[');
+            boolean first = true;
+            for (int i = 0; i < reports.size(); i++) {
+                if (writer.writeTaggedReport(i, reports.get(i), null, first)) {
+                    first = false;
+                }
+            }
+            writer.append(']');
+            return writer.finish();
+        } finally {
+            writer.reset();
+        }
+    }
+
+    /**
+     * Creates stats shaped like the ones libwebrtc reports for a call with
+     * an audio and a video track in each direction.
+     */
+    private static List<RTCStats> createReport(int peerConnectionId) {
+        List<RTCStats> report = new ArrayList<>();
+        long timestampUs = 1700000000000000L + peerConnectionId * 1234567L;
+
+        Map<String, Object> pc = new LinkedHashMap<>();
+        pc.put("dataChannelsOpened", 1L);
+        pc.put("dataChannelsClosed", 0L);
+        report.add(new RTCStats(timestampUs, "peer-connection", "P", pc));
+
+        for (String kind : new String[] {"audio", "video"}) {
+            String codecId = "CIT01_" + (kind.equals("audio") ? "111_minptime=10;useinbandfec=1" : "96");
+            Map<String, Object> codec = new LinkedHashMap<>();
+            codec.put("transportId", "T01");
+            codec.put("payloadType", kind.equals("audio") ? 111L : 96L);
+            codec.put("mimeType", kind.equals("audio") ? "audio/opus" : "video/VP8");
+            codec.put("clockRate", kind.equals("audio") ? 48000L : 90000L);
+            if (kind.equals("audio")) {
+                codec.put("channels", 2L);
+                codec.put("sdpFmtpLine", "minptime=10;useinbandfec=1");
+            }
+            report.add(new RTCStats(timestampUs, "codec", codecId, codec));
+
+            Map<String, Object> inbound = new LinkedHashMap<>();
+            inbound.put("ssrc", 2841590623L + kind.length());
+            inbound.put("kind", kind);
+            inbound.put("trackIdentifier", "b3c9e1f0-1e3d-4c45-9b8f-" + kind);
+            inbound.put("transportId", "T01");
+            inbound.put("codecId", codecId);
+            inbound.put("mid", kind.equals("audio") ? "0" : "1");
+            inbound.put("packetsReceived", 183457L);
+            inbound.put("bytesReceived", new BigInteger("201934567"));
+            inbound.put("headerBytesReceived", new BigInteger("4403000"));
+            inbound.put("packetsLost", 12);
+            inbound.put("lastPacketReceivedTimestamp", 1700000000123.456);
+            inbound.put("jitter", 0.004);
+            inbound.put("jitterBufferDelay", 2834.112);
+            inbound.put("jitterBufferEmittedCount", new BigInteger("120384"));
+            inbound.put("nackCount", 3L);
+            if (kind.equals("video")) {
+                inbound.put("framesReceived", 54321L);
+                inbound.put("framesDecoded", 54300L);
+                inbound.put("keyFramesDecoded", 27L);
+                inbound.put("framesDropped", 21L);
+                inbound.put("frameWidth", 1280L);
+                inbound.put("frameHeight", 720L);
+                inbound.put("framesPerSecond", 29.97);
+                inbound.put("totalDecodeTime", 181.245);
+                inbound.put("decoderImplementation", "libvpx");
+                inbound.put("firCount", 0L);
+                inbound.put("pliCount", 4L);
+                inbound.put("qpSum", new BigInteger("1738220"));
+            } else {
+                inbound.put("totalSamplesReceived", new BigInteger("86400000"));
+                inbound.put("concealedSamples", new BigInteger("4800"));
+                inbound.put("audioLevel", 0.0123);
+                inbound.put("totalAudioEnergy", 0.87654321);
+                inbound.put("totalSamplesDuration", 1800.02);
+            }
+            report.add(new RTCStats(timestampUs, "inbound-rtp", "IT01" + kind.charAt(0), inbound));
+
+            Map<String, Object> outbound = new LinkedHashMap<>();
+            outbound.put("ssrc", 1029384756L + kind.length());
+            outbound.put("kind", kind);
+            outbound.put("transportId", "T01");
+            outbound.put("codecId", codecId);
+            outbound.put("mediaSourceId", "SO" + kind.charAt(0));
+            outbound.put("mid", kind.equals("audio") ? "0" : "1");
+            outbound.put("packetsSent", new BigInteger("190234"));
+            outbound.put("bytesSent", new BigInteger("210987654"));
+            outbound.put("retransmittedPacketsSent", new BigInteger("17"));
+            outbound.put("targetBitrate", 1500000.0);
+            outbound.put("totalPacketSendDelay", 12.5);
+            outbound.put("active", Boolean.TRUE);
+            if (kind.equals("video")) {
+                outbound.put("framesEncoded", 54000L);
+                outbound.put("frameWidth", 1280L);
+                outbound.put("frameHeight", 720L);
+                outbound.put("framesPerSecond", 30.0);
+                outbound.put("totalEncodeTime", 95.321);
+                outbound.put("qualityLimitationReason", "none");
+                outbound.put("qualityLimitationDurations", qualityLimitationDurations());
+                outbound.put("encoderImplementation", "libvpx");
+                outbound.put("rid", "h");
+            }
+            report.add(new RTCStats(timestampUs, "outbound-rtp", "OT01" + kind.charAt(0), outbound));
+
+            Map<String, Object> remoteInbound = new LinkedHashMap<>();
+            remoteInbound.put("ssrc", 1029384756L + kind.length());
+            remoteInbound.put("kind", kind);
+            remoteInbound.put("transportId", "T01");
+            remoteInbound.put("codecId", codecId);
+            remoteInbound.put("localId", "OT01" + kind.charAt(0));
+            remoteInbound.put("packetsLost", 5);
+            remoteInbound.put("jitter", 0.0021);
+            remoteInbound.put("roundTripTime", 0.043);
+            remoteInbound.put("totalRoundTripTime", 77.4);
+            remoteInbound.put("fractionLost", 0.0);
+            remoteInbound.put("roundTripTimeMeasurements", 1800);
+            report.add(new RTCStats(timestampUs, "remote-inbound-rtp", "RI01" + kind.charAt(0), remoteInbound));
+
+            Map<String, Object> source = new LinkedHashMap<>();
+            source.put("trackIdentifier", "9a8b7c6d-" + kind);
+            source.put("kind", kind);
+            if (kind.equals("video")) {
+                source.put("width", 1280L);
+                source.put("height", 720L);
+                source.put("frames", 54001L);
+                source.put("framesPerSecond", 30.0);
+            } else {
+                source.put("audioLevel", 0.25);
+                source.put("totalAudioEnergy", 12.3456);
+                source.put("totalSamplesDuration", 1800.0);
+            }
+            report.add(new RTCStats(timestampUs, "media-source", "SO" + kind.charAt(0), source));
+        }
+
+        Map<String, Object> transport = new LinkedHashMap<>();
+        transport.put("bytesSent", new BigInteger("421975308"));
+        transport.put("bytesReceived", new BigInteger("403869134"));
+        transport.put("packetsSent", new BigInteger("380468"));
+        transport.put("packetsReceived", new BigInteger("366914"));
+        transport.put("dtlsState", "connected");
+        transport.put("selectedCandidatePairId", "CPa1b2c3d4_e5f6a7b8");
+        transport.put("localCertificateId", "CFAB:CD:EF:01");
+        transport.put("remoteCertificateId", "CF12:34:56:78");
+        transport.put("tlsVersion", "FEFD");
+        transport.put("dtlsCipher", "TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256");
+        transport.put("srtpCipher", "AES_CM_128_HMAC_SHA1_80");
+        transport.put("selectedCandidatePairChanges", 1L);
+        report.add(new RTCStats(timestampUs, "transport", "T01", transport));
+
+        for (int i = 0; i < 4; i++) {
+            String local = "I" + Integer.toHexString(0x1a2b3c + i);
+            String remote = "I" + Integer.toHexString(0x4d5e6f + i);
+
+            Map<String, Object> pair = new LinkedHashMap<>();
+            pair.put("transportId", "T01");
+            pair.put("localCandidateId", local);
+            pair.put("remoteCandidateId", remote);
+            pair.put("state", i == 0 ? "succeeded" : "waiting");
+            pair.put("priority", new BigInteger("9115038255631187967"));
+            pair.put("nominated", i == 0);
+            pair.put("packetsSent", new BigInteger("380468"));
+            pair.put("bytesSent", new BigInteger("421975308"));
+            pair.put("bytesReceived", new BigInteger("403869134"));
+            pair.put("totalRoundTripTime", 12.345);
+            pair.put("currentRoundTripTime", 0.041);
+            pair.put("availableOutgoingBitrate", 2534000.0);
+            pair.put("requestsReceived", new BigInteger("901"));
+            pair.put("responsesSent", new BigInteger("901"));
+            report.add(new RTCStats(timestampUs, "candidate-pair", "CP" + local + "_" + remote, pair));
+
+            for (String id : new String[] {local, remote}) {
+                Map<String, Object> candidate = new LinkedHashMap<>();
+                candidate.put("transportId", "T01");
+                candidate.put("isRemote", id.equals(remote));
+                candidate.put("address", "192.168.1." + (10 + i));
+                candidate.put("port", 50000L + i);
+                candidate.put("protocol", "udp");
+                candidate.put("candidateType", i < 2 ? "host" : "srflx");
+                candidate.put("priority", 2122260223L);
+                candidate.put("url", "stun:stun.l.google.com:19302");
+                report.add(new RTCStats(
+                    timestampUs,
+                    id.equals(local) ? "local-candidate" : "remote-candidate",
+                    id,
+                    candidate));
+            }
+        }
+
+        for (String id : new String[] {"CFAB:CD:EF:01", "CF12:34:56:78"}) {
+            Map<String, Object> certificate = new LinkedHashMap<>();
+            certificate.put("fingerprint", id.substring(2) + ":9A:8B:7C:6D:5E:4F:3A:2B:1C:0D:EE:FF");
+            certificate.put("fingerprintAlgorithm", "sha-256");
+            certificate.put("base64Certificate", "MIIBFjCBvaADAgECAgkA7Zkb2lV0h0QwCgYIKoZIzj0EAwIwETEPMA0GA1UEAwwG\nV2ViUlRD");
+            report.add(new RTCStats(timestampUs, "certificate", id, certificate));
+        }
+
+        Map<String, Object> dataChannel = new LinkedHashMap<>();
+        dataChannel.put("label", "chat \"main\"");
+        dataChannel.put("protocol", "json+deflate");
+        dataChannel.put("dataChannelIdentifier", 1);
+        dataChannel.put("state", "open");
+        dataChannel.put("messagesSent", 1234L);
+        dataChannel.put("bytesSent", new BigInteger("98765"));
+        dataChannel.put("messagesReceived", 4321L);
+        dataChannel.put("bytesReceived", new BigInteger("56789"));
+        report.add(new RTCStats(timestampUs, "data-channel", "D1", dataChannel));
+
+        return report;
+    }
+
+    private static Map<String, Double> qualityLimitationDurations() {
+        Map<String, Double> durations = new LinkedHashMap<>();
+        durations.put("bandwidth", 12.3);
+        durations.put("cpu", 0.0);
+        durations.put("none", 1787.7);
+        durations.put("other", 0.0);
+        return durations;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread so far or -1
+     * if the JVM does not tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean
+            = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,166 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.webrtc.RTCStats;
+
+public class StatsJsonWriterTest {
+    private static String string(String value) {
+        StatsJsonWriter writer = StatsJsonWriter.get();
+        try {
+            writer.writeString(value);
+            return writer.finish();
+        } finally {
+            writer.reset();
+        }
+    }
+
+    private static String number(double value) {
+        StatsJsonWriter writer = StatsJsonWriter.get();
+        try {
+            writer.writeNumber(value);
+            return writer.finish();
+        } finally {
+            writer.reset();
+        }
+    }
+
+    private static String value(Object value) {
+        StatsJsonWriter writer = StatsJsonWriter.get();
+        try {
+            writer.writeValue(value);
+            return writer.finish();
+        } finally {
+            writer.reset();
+        }
+    }
+
+    @Test
+    public void writesPlainStrings() {
+        assertEquals("\"\"", string(""));
+        assertEquals("\"RTCInboundRTPVideoStream_1234\"", string("RTCInboundRTPVideoStream_1234"));
+        assertEquals("\"caf\u00e9 \ud83d\ude00\"", string("caf\u00e9 \ud83d\ude00"));
+    }
+
+    @Test
+    public void escapesQuotesAndBackslashes() {
+        assertEquals("\"a\\\"b\\\\c\"", string("a\"b\\c"));
+        assertEquals("\"\\\"\"", string("\""));
+        assertEquals("\"\\\\\"", string("\\"));
+    }
+
+    @Test
+    public void escapesControlCharacters() {
+        assertEquals("\"\\n\\r\\t\"", string("\n\r\t"));
+        assertEquals("\"\\u0000\\u0001\\u001f\"", string("\u0000\u0001\u001f"));
+        assertEquals("\"a\\u0008b\u007f\"", string("a\bb\u007f"));
+    }
+
+    @Test
+    public void escapesLineAndParagraphSeparators() {
+        // Valid in JSON but not in JS string literals.
+        assertEquals("\"\\u2028x\\u2029\"", string("\u2028x\u2029"));
+    }
+
+    @Test
+    public void writesIntegralDoublesAsIntegers() {
+        assertEquals("0", number(0));
+        assertEquals("0", number(-0.0));
+        assertEquals("42", number(42.0));
+        assertEquals("-7", number(-7.0));
+        assertEquals("1700000000000", number(1.7e12));
+        assertEquals("999999999999999", number(999999999999999.0));
+    }
+
+    @Test
+    public void writesFractionsAndLargeDoubles() {
+        assertEquals("0.5", number(0.5));
+        assertEquals("-3.25", number(-3.25));
+        assertEquals("1.0E-7", number(1e-7));
+        assertEquals("1.0E15", number(1e15));
+        // Valid JSON which JS parses back into the same double.
+        assertEquals("1.7000000000005E12", number(1.7e12 + 0.5));
+        assertEquals(Double.valueOf(1.0E300), Double.valueOf(number(1e300)));
+    }
+
+    @Test
+    public void writesNonFiniteNumbersAsNull() {
+        assertEquals("null", number(Double.NaN));
+        assertEquals("null", number(Double.POSITIVE_INFINITY));
+        assertEquals("null", number(Double.NEGATIVE_INFINITY));
+        assertEquals("null", value(Float.NaN));
+    }
+
+    @Test
+    public void writesMemberValues() {
+        assertEquals("null", value(null));
+        assertEquals("true", value(Boolean.TRUE));
+        assertEquals("12", value(12));
+        assertEquals("-9223372036854775808", value(Long.MIN_VALUE));
+        assertEquals("18446744073709551615", value(new BigInteger("18446744073709551615")));
+        assertEquals("2.5", value(2.5f));
+        assertEquals("\"x\"", value("x"));
+        assertEquals("[1,\"a\",null]", value(new Object[] {1L, "a", Double.NaN}));
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a\"", 1.0);
+        map.put("b", new String[] {"c"});
+        assertEquals("{\"a\\\"\":1,\"b\":[\"c\"]}", value(map));
+    }
+
+    @Test
+    public void writesReports() {
+        Map<String, Object> members = new LinkedHashMap<>();
+        members.put("bytesReceived", new BigInteger("1234"));
+        members.put("jitter", 0.015);
+        RTCStats stats = new RTCStats(1700000000123000L, "inbound-rtp", "IT01V", members);
+
+        StatsJsonWriter writer = StatsJsonWriter.get();
+        try {
+            writer.writeReport(Collections.singletonList(stats), null);
+            assertEquals(
+                "[[\"IT01V\",{\"id\":\"IT01V\",\"type\":\"inbound-rtp\","
+                    + "\"timestamp\":1700000000123,"
+                    + "\"bytesReceived\":1234,\"jitter\":0.015}]]",
+                writer.finish());
+        } finally {
+            writer.reset();
+        }
+
+        writer = StatsJsonWriter.get();
+        try {
+            writer.append('[');
+            writer.writeTaggedReport(3, Collections.singletonList(stats), null, true);
+            writer.append(']');
+            assertEquals(
+                "[[\"3/IT01V\",{\"id\":\"IT01V\",\"type\":\"inbound-rtp\","
+                    + "\"timestamp\":1700000000123,\"peerConnectionId\":3,"
+                    + "\"bytesReceived\":1234,\"jitter\":0.015}]]",
+                writer.finish());
+        } finally {
+            writer.reset();
+        }
+    }
+
+    @Test
+    public void escapesTaggedIds() {
+        RTCStats stats = new RTCStats(0, "codec", "C\"1", Collections.<String, Object>emptyMap());
+
+        StatsJsonWriter writer = StatsJsonWriter.get();
+        try {
+            writer.writeTaggedReport(1, Collections.singletonList(stats), null, true);
+            assertEquals(
+                "[\"1/C\\\"1\",{\"id\":\"C\\\"1\",\"type\":\"codec\","
+                    + "\"timestamp\":0,\"peerConnectionId\":1}]",
+                writer.finish());
+        } finally {
+            writer.reset();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class Utf8DecoderTest {
+    @Test
+    public void decodesSlices() {
+        ByteBuffer data = ByteBuffer.wrap("xxhello\u00e9yy".getBytes(Utf8Decoder.UTF_8));
+        data.position(2).limit(data.limit() - 2);
+
+        assertEquals("hello\u00e9", new Utf8Decoder().decode(data));
+        assertEquals(0, data.remaining());
+    }
+
+    @Test
+    public void decodesLikeString() {
+        Utf8Decoder decoder = new Utf8Decoder();
+        String text = "{\"label\":\"caf\u00e9 \u2713 \ud83d\ude00\"}";
+        byte[] bytes = text.getBytes(Utf8Decoder.UTF_8);
+
+        // Decode twice to check that the reused decoder starts afresh.
+        assertEquals(text, decoder.decode(ByteBuffer.wrap(bytes)));
+        assertEquals(text, decoder.decode(ByteBuffer.wrap(bytes)));
+    }
+}
@@ -33,6 +33,19 @@ static NSString *const kEventDataChannelStateChanged = @"dataChannelStateChanged
 static NSString *const kEventDataChannelReceiveMessage = @"dataChannelReceiveMessage";
 static NSString *const kEventMediaStreamTrackMuteChanged = @"mediaStreamTrackMuteChanged";
 
+// Emitted by the Android implementation only. Listed in supportedEvents so
+// that the listeners which the JS side adds on all platforms are accepted.
+static NSString *const kEventWebRTCEventBatch = @"webRTCEventBatch";
+static NSString *const kEventWebRTCModuleInitialized = @"webRTCModuleInitialized";
+static NSString *const kEventExecutorWatchdogReport = @"executorWatchdogReport";
+static NSString *const kEventPeerConnectionGotICECandidates = @"peerConnectionGotICECandidates";
+static NSString *const kEventPeerConnectionStatsSample = @"peerConnectionStatsSample";
+static NSString *const kEventDataChannelMessagesAvailable = @"dataChannelMessagesAvailable";
+static NSString *const kEventDataChannelReceiveMessages = @"dataChannelReceiveMessages";
+static NSString *const kEventDataChannelBufferedAmountChanged = @"dataChannelBufferedAmountChanged";
+static NSString *const kEventDataChannelFileTransferProgress = @"dataChannelFileTransferProgress";
+static NSString *const kEventDataChannelError = @"dataChannelError";
+
 @interface WebRTCModule : RCTEventEmitter <RCTBridgeModule, AVCaptureVideoDataOutputSampleBufferDelegate, AVCapturePhotoCaptureDelegate>
 
 @property (nonatomic, strong) RCTPromiseResolveBlock resolve;
@@ -111,7 +111,17 @@ RCT_EXPORT_MODULE();
     kEventPeerConnectionDidOpenDataChannel,
     kEventDataChannelStateChanged,
     kEventDataChannelReceiveMessage,
-    kEventMediaStreamTrackMuteChanged
+    kEventMediaStreamTrackMuteChanged,
+    kEventWebRTCEventBatch,
+    kEventWebRTCModuleInitialized,
+    kEventExecutorWatchdogReport,
+    kEventPeerConnectionGotICECandidates,
+    kEventPeerConnectionStatsSample,
+    kEventDataChannelMessagesAvailable,
+    kEventDataChannelReceiveMessages,
+    kEventDataChannelBufferedAmountChanged,
+    kEventDataChannelFileTransferProgress,
+    kEventDataChannelError
   ];
 }
 